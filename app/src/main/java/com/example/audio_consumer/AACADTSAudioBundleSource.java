@@ -6,11 +6,11 @@ import java.io.IOException;
 
 public class AACADTSAudioBundleSource extends MediaDataSource {
 
-    byte[] buffer_;
+    AudioBundle bundle_;
 
-    public AACADTSAudioBundleSource(byte[] audioBundle) {
+    public AACADTSAudioBundleSource(AudioBundle audioBundle) {
         super();
-        buffer_ = audioBundle;
+        bundle_ = audioBundle;
     }
 
     @Override
@@ -19,15 +19,7 @@ public class AACADTSAudioBundleSource extends MediaDataSource {
     @Override
     public int readAt(long source_offset, byte[] dest_buf, int dest_offset, int length) throws IOException {
         try {
-            int read_length = 0;
-            if (source_offset > buffer_.length - 1) {
-                return -1; // end of stream reached
-            }
-            if (source_offset + length > buffer_.length) {
-                read_length = buffer_.length - (int) source_offset;
-            }
-            System.arraycopy(buffer_, (int) source_offset, dest_buf, dest_offset, read_length);
-            return read_length;
+            return bundle_.readAt(source_offset, dest_buf, dest_offset, length); // -1 at end of stream
         }
         catch (ArrayIndexOutOfBoundsException e) {
             throw new IOException(e.getMessage());
@@ -36,6 +28,6 @@ public class AACADTSAudioBundleSource extends MediaDataSource {
 
     @Override
     public long getSize() throws IOException {
-        return buffer_.length;
+        return bundle_.getLength();
     }
 }
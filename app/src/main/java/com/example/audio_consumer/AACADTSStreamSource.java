@@ -0,0 +1,188 @@
+package com.example.audio_consumer;
+
+import android.media.MediaDataSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One continuous, append-only ADTS stream for MediaPlayer, so the player prepares once and
+ * keeps playing while bundles are appended. The length is reported as unknown, and readAt()
+ * waits, up to a timeout, for data that has not been appended yet.
+ *
+ * Reads are served straight from the appended bundles. A bundle is handed back to its owner
+ * once MediaPlayer has read all of it; only then are the bytes of it that fall inside the
+ * retain-behind window copied into a fixed ring, since the owner will not append more until
+ * it gets the bundle back.
+ */
+public class AACADTSStreamSource extends MediaDataSource {
+
+    public static final long DEFAULT_READ_TIMEOUT_MS = 10000;
+    // kept behind the furthest read for extractors that read back, e.g. after sniffing the stream
+    private static final int RETAIN_BEHIND_BYTES = 64 * 1024;
+
+    /** Told, on the reading thread, when every byte of an appended bundle has been read. */
+    public interface ConsumptionListener {
+        void onBundleConsumed(AudioBundle bundle);
+    }
+
+    private static class Pending {
+        final AudioBundle bundle;
+        final long position;
+        final long endPosition;
+
+        Pending(AudioBundle bundle, long position, long endPosition) {
+            this.bundle = bundle;
+            this.position = position;
+            this.endPosition = endPosition;
+        }
+    }
+
+    private final long readTimeoutNs_;
+    private final ConsumptionListener listener_;
+
+    private final ArrayDeque<Pending> pending_ = new ArrayDeque<Pending>();
+    // stream bytes [retainedStart_, retainedEnd_) of bundles already handed back, at position % length
+    private final byte[] retained_ = new byte[RETAIN_BEHIND_BYTES];
+    private long retainedStart_ = 0;
+    private long retainedEnd_ = 0;
+    private long appendedBytes_ = 0;
+    private long furthestRead_ = 0;
+    private boolean endOfStream_ = false;
+    private boolean closed_ = false;
+
+    public AACADTSStreamSource(ConsumptionListener listener) {
+        this(DEFAULT_READ_TIMEOUT_MS, listener);
+    }
+
+    public AACADTSStreamSource(long readTimeoutMs, ConsumptionListener listener) {
+        super();
+        readTimeoutNs_ = TimeUnit.MILLISECONDS.toNanos(readTimeoutMs);
+        listener_ = listener;
+    }
+
+    /** Appends the bundle to the stream. The bundle is read in place until it is consumed. */
+    public synchronized void append(AudioBundle bundle) throws IOException {
+        if (closed_ || endOfStream_) throw new IOException("Stream already ended");
+        long position = appendedBytes_;
+        appendedBytes_ += bundle.getLength();
+        pending_.add(new Pending(bundle, position, appendedBytes_));
+        notifyAll();
+    }
+
+    /** No more data will be appended; reads past the end now return -1. */
+    public synchronized void endOfStream() {
+        endOfStream_ = true;
+        notifyAll();
+    }
+
+    /**
+     * Removes and returns the appended bundles that have not been fully read yet. Their part
+     * of the stream can no longer be read.
+     */
+    public synchronized List<AudioBundle> takeUnconsumed() {
+        List<AudioBundle> bundles = new ArrayList<AudioBundle>(pending_.size());
+        for (Pending p : pending_) {
+            bundles.add(p.bundle);
+        }
+        pending_.clear();
+        return bundles;
+    }
+
+    public synchronized long getAppendedBytes() { return appendedBytes_; }
+
+    @Override
+    public synchronized void close() {
+        closed_ = true;
+        notifyAll();
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        List<AudioBundle> consumed = null;
+        int read;
+        synchronized (this) {
+            long deadline = System.nanoTime() + readTimeoutNs_;
+            while (position >= appendedBytes_ && !endOfStream_ && !closed_) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for stream data at " + position);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (closed_) throw new IOException("Stream closed");
+            if (position >= appendedBytes_) return -1; // end of stream
+            if (position < retainedStart_) {
+                throw new IOException("Stream data at " + position + " already released");
+            }
+
+            read = copyTo(position, buffer, offset, (int) Math.min(size, appendedBytes_ - position));
+            if (position + read > furthestRead_) {
+                furthestRead_ = position + read;
+                while (!pending_.isEmpty() && pending_.peekFirst().endPosition <= furthestRead_) {
+                    Pending p = pending_.pollFirst();
+                    retain(p);
+                    if (consumed == null) consumed = new ArrayList<AudioBundle>(2);
+                    consumed.add(p.bundle);
+                }
+            }
+        }
+        if (consumed != null && listener_ != null) {
+            for (AudioBundle bundle : consumed) {
+                listener_.onBundleConsumed(bundle);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long getSize() {
+        return -1; // unknown, the stream is live
+    }
+
+    // copies from the retained ring, then from the bundles still pending; stops short at
+    // data handed back with takeUnconsumed()
+    private int copyTo(long position, byte[] buffer, int offset, int length) {
+        int copied = 0;
+        while (copied < length && position < retainedEnd_) {
+            int from = (int) (position % retained_.length);
+            int n = (int) Math.min(Math.min(length - copied, retainedEnd_ - position), retained_.length - from);
+            System.arraycopy(retained_, from, buffer, offset + copied, n);
+            copied += n;
+            position += n;
+        }
+        for (Pending p : pending_) {
+            if (copied == length) break;
+            if (p.endPosition <= position) continue;
+            if (p.position > position) break;
+            int n = p.bundle.readAt(position - p.position, buffer, offset + copied, length - copied);
+            if (n <= 0) break;
+            copied += n;
+            position += n;
+        }
+        return copied;
+    }
+
+    // keeps the tail of a consumed bundle that falls inside the retain-behind window
+    private void retain(Pending p) {
+        long start = Math.max(p.position, p.endPosition - retained_.length);
+        long position = start;
+        while (position < p.endPosition) {
+            int to = (int) (position % retained_.length);
+            int n = (int) Math.min(p.endPosition - position, retained_.length - to);
+            p.bundle.readAt(position - p.position, retained_, to, n);
+            position += n;
+        }
+        retainedEnd_ = p.endPosition;
+        retainedStart_ = Math.max(retainedStart_, retainedEnd_ - retained_.length);
+    }
+
+}
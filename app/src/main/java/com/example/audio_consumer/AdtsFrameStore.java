@@ -0,0 +1,116 @@
+package com.example.audio_consumer;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only frame store over a memory-mapped ADTS file or uncompressed asset. The frame
+ * offset index is built lazily as frames are asked for, so opening a long recording costs
+ * nothing up front, and frames are served as ByteBuffer slices of the mapping, so the audio
+ * itself never sits on the heap.
+ */
+public class AdtsFrameStore implements Closeable {
+
+    private static final String TAG = "AdtsFrameStore";
+
+    private final FileInputStream stream_;
+    private final MappedByteBuffer map_;
+
+    private int[] frameOffsets_ = new int[256]; // frame i spans [frameOffsets_[i], frameOffsets_[i + 1])
+    private int numIndexed_ = 0;
+    private int scanPosition_ = 0;
+    private boolean fullyIndexed_ = false;
+    private int bytesSkipped_ = 0;
+
+    private final AdtsHeader header_ = new AdtsHeader();
+    private final byte[] headerBytes_ = new byte[AdtsHeader.HEADER_LENGTH_NO_CRC];
+
+    public static AdtsFrameStore open(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        return new AdtsFrameStore(stream, 0, stream.getChannel().size());
+    }
+
+    /** Opens an asset; it must be stored uncompressed (see aaptOptions.noCompress) to be mappable. */
+    public static AdtsFrameStore open(AssetFileDescriptor asset) throws IOException {
+        return new AdtsFrameStore(asset.createInputStream(), asset.getStartOffset(), asset.getLength());
+    }
+
+    private AdtsFrameStore(FileInputStream stream, long offset, long length) throws IOException {
+        stream_ = stream;
+        try {
+            map_ = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns frame index as a slice of the mapping, or null past the last frame. The slice is
+     * only valid until close().
+     */
+    public synchronized ByteBuffer frame(int index) {
+        if (!indexThrough(index)) {
+            return null;
+        }
+        ByteBuffer slice = map_.duplicate();
+        slice.limit(frameOffsets_[index + 1]);
+        slice.position(frameOffsets_[index]);
+        return slice.slice();
+    }
+
+    /** Total number of frames; indexes the whole file on first use. */
+    public synchronized int getNumFrames() {
+        indexThrough(Integer.MAX_VALUE - 1);
+        return numIndexed_;
+    }
+
+    /** Bytes that were not part of a valid frame, e.g. garbage between frames. */
+    public synchronized int getBytesSkipped() {
+        return bytesSkipped_;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream_.close();
+    }
+
+    // scans forward until frame index is indexed; false if the file ends first
+    private boolean indexThrough(int index) {
+        int limit = map_.limit();
+        while (numIndexed_ <= index && !fullyIndexed_) {
+            if (limit - scanPosition_ < AdtsHeader.HEADER_LENGTH_NO_CRC) {
+                bytesSkipped_ += limit - scanPosition_;
+                fullyIndexed_ = true;
+                break;
+            }
+            for (int i = 0; i < headerBytes_.length; i++) {
+                headerBytes_[i] = map_.get(scanPosition_ + i);
+            }
+            header_.wrap(headerBytes_, 0);
+            int frameLength = header_.getFrameLength();
+            if (!header_.isValid() || scanPosition_ + frameLength > limit) {
+                scanPosition_++; // resync one byte further on
+                bytesSkipped_++;
+                continue;
+            }
+            if (numIndexed_ + 2 > frameOffsets_.length) {
+                frameOffsets_ = Arrays.copyOf(frameOffsets_, frameOffsets_.length * 2);
+            }
+            frameOffsets_[numIndexed_] = scanPosition_;
+            scanPosition_ += frameLength;
+            frameOffsets_[numIndexed_ + 1] = scanPosition_;
+            numIndexed_++;
+        }
+        return numIndexed_ > index;
+    }
+
+}
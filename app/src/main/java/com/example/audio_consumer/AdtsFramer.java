@@ -0,0 +1,121 @@
+package com.example.audio_consumer;
+
+/**
+ * Splits a raw ADTS byte stream, fed in arbitrary chunks, into frames. Frame boundaries come
+ * from the header's frame length; after garbage or a corrupt header the framer resyncs by
+ * scanning for the next sync word. A frame is only passed on if its header is valid and,
+ * when the following bytes have already arrived, the next frame starts with a sync word too.
+ */
+public class AdtsFramer {
+
+    private static final String TAG = "AdtsFramer";
+
+    public interface FrameListener {
+        /**
+         * Called for every frame found. buffer, offset and header are only valid for the
+         * duration of the call; copy the frame if it has to outlive it.
+         */
+        void onFrame(byte[] buffer, int offset, int length, AdtsHeader header);
+    }
+
+    private final FrameListener listener_;
+    private final AdtsHeader header_ = new AdtsHeader();
+
+    // room for a partial frame plus a full incoming chunk slice after compaction
+    private final byte[] buffer_ = new byte[2 * AdtsHeader.MAX_FRAME_LENGTH];
+    private int start_ = 0;
+    private int end_ = 0;
+
+    private long framesEmitted_ = 0;
+    private long framesRejected_ = 0;
+    private long bytesSkipped_ = 0;
+
+    public AdtsFramer(FrameListener listener) {
+        listener_ = listener;
+    }
+
+    /** Creates a framer that pushes every frame it finds into bundler. */
+    public AdtsFramer(final StreamFrameBundler bundler) {
+        this(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length, AdtsHeader header) {
+                bundler.pushFrame(buffer, offset, length);
+            }
+        });
+    }
+
+    public void feed(byte[] chunk) {
+        feed(chunk, 0, chunk.length);
+    }
+
+    public void feed(byte[] chunk, int offset, int length) {
+        while (length > 0) {
+            if (end_ == buffer_.length) {
+                compact();
+            }
+            int copied = Math.min(length, buffer_.length - end_);
+            System.arraycopy(chunk, offset, buffer_, end_, copied);
+            end_ += copied;
+            offset += copied;
+            length -= copied;
+            drain();
+        }
+    }
+
+    /** Discards any partially received frame, e.g. after the connection was re-established. */
+    public void reset() {
+        start_ = 0;
+        end_ = 0;
+    }
+
+    public long getFramesEmitted() { return framesEmitted_; }
+
+    /** Frames whose sync word matched but whose header or following sync word did not check out. */
+    public long getFramesRejected() { return framesRejected_; }
+
+    /** Bytes thrown away while searching for a sync word. */
+    public long getBytesSkipped() { return bytesSkipped_; }
+
+    private void drain() {
+        while (end_ - start_ >= AdtsHeader.HEADER_LENGTH_NO_CRC) {
+            if (!AdtsHeader.isSyncWord(buffer_, start_)) {
+                skipByte();
+                continue;
+            }
+            header_.wrap(buffer_, start_);
+            if (!header_.isValid()) {
+                framesRejected_++;
+                skipByte();
+                continue;
+            }
+            int frameLength = header_.getFrameLength();
+            if (end_ - start_ < frameLength) {
+                return; // wait for the rest of the frame
+            }
+            if (end_ - start_ >= frameLength + 2 && !AdtsHeader.isSyncWord(buffer_, start_ + frameLength)) {
+                framesRejected_++;
+                skipByte();
+                continue;
+            }
+            listener_.onFrame(buffer_, start_, frameLength, header_);
+            framesEmitted_++;
+            start_ += frameLength;
+        }
+        if (start_ == end_) {
+            start_ = 0;
+            end_ = 0;
+        }
+    }
+
+    private void skipByte() {
+        start_++;
+        bytesSkipped_++;
+    }
+
+    private void compact() {
+        System.arraycopy(buffer_, start_, buffer_, 0, end_ - start_);
+        end_ -= start_;
+        start_ = 0;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.example.audio_consumer;
+
+/**
+ * Reusable view over an ADTS frame header. wrap() points it at a header in place, and the
+ * getters decode the fields straight from the underlying bytes, so nothing is allocated per
+ * frame.
+ */
+public class AdtsHeader {
+
+    public static final int HEADER_LENGTH_NO_CRC = 7;
+    public static final int HEADER_LENGTH_WITH_CRC = 9;
+    public static final int MAX_FRAME_LENGTH = 8191; // 13 bit frame length field
+    public static final int SAMPLES_PER_RAW_DATA_BLOCK = 1024;
+    // assumed frame duration until a frame header has been parsed: 1024 samples at 8 kHz
+    public static final long DEFAULT_FRAME_DURATION_US = 128000;
+
+    private static final int[] SAMPLE_RATES = new int[] {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    private byte[] buf_;
+    private int offset_;
+
+    public AdtsHeader wrap(byte[] buf, int offset) {
+        buf_ = buf;
+        offset_ = offset;
+        return this;
+    }
+
+    /** True if buf holds the 12 bit 0xFFF sync word followed by layer 0 at offset. */
+    public static boolean isSyncWord(byte[] buf, int offset) {
+        return (buf[offset] & 0xFF) == 0xFF && (buf[offset + 1] & 0xF6) == 0xF0;
+    }
+
+    /** Checks the fields a corrupt or false-sync header is most likely to get wrong. */
+    public boolean isValid() {
+        return isSyncWord(buf_, offset_) &&
+                getSamplingFrequencyIndex() < SAMPLE_RATES.length &&
+                getFrameLength() >= getHeaderLength();
+    }
+
+    public boolean isProtectionAbsent() { return (byteAt(1) & 0x01) != 0; }
+
+    public int getHeaderLength() {
+        return isProtectionAbsent() ? HEADER_LENGTH_NO_CRC : HEADER_LENGTH_WITH_CRC;
+    }
+
+    /** MPEG-4 audio object type minus one, e.g. 1 for AAC LC. */
+    public int getProfile() { return (byteAt(2) >> 6) & 0x03; }
+
+    public int getSamplingFrequencyIndex() { return (byteAt(2) >> 2) & 0x0F; }
+
+    /** Sample rate in Hz, or 0 for a reserved sampling frequency index. */
+    public int getSampleRate() {
+        int index = getSamplingFrequencyIndex();
+        return index < SAMPLE_RATES.length ? SAMPLE_RATES[index] : 0;
+    }
+
+    public int getChannelConfiguration() {
+        return ((byteAt(2) & 0x01) << 2) | ((byteAt(3) >> 6) & 0x03);
+    }
+
+    /** Length of the whole frame, header included. */
+    public int getFrameLength() {
+        return ((byteAt(3) & 0x03) << 11) | (byteAt(4) << 3) | ((byteAt(5) >> 5) & 0x07);
+    }
+
+    public int getBufferFullness() {
+        return ((byteAt(5) & 0x1F) << 6) | ((byteAt(6) >> 2) & 0x3F);
+    }
+
+    public int getNumRawDataBlocks() { return (byteAt(6) & 0x03) + 1; }
+
+    public int getNumSamples() { return getNumRawDataBlocks() * SAMPLES_PER_RAW_DATA_BLOCK; }
+
+    /** How long the frame plays, from its sample count and sample rate; 0 for an invalid sample rate. */
+    public long getDurationNs() {
+        int sampleRate = getSampleRate();
+        return sampleRate == 0 ? 0 : getNumSamples() * 1000000000L / sampleRate;
+    }
+
+    public long getDurationUs() { return getDurationNs() / 1000; }
+
+    private int byteAt(int index) {
+        return buf_[offset_ + index] & 0xFF;
+    }
+
+}
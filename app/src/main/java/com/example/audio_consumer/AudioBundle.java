@@ -0,0 +1,219 @@
+package com.example.audio_consumer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A bundle of ADTS frames that keeps references to the frame arrays instead of concatenating
+ * them. Reads are served straight from the segments, located by binary search on the
+ * position index.
+ *
+ * Bundles leased from an AudioBundlePool should be handed back with recycle() once the
+ * player is done with them.
+ */
+public class AudioBundle {
+
+    private byte[][] segments_;
+    private int[] segmentOffsets_;   // offset of each segment within its backing array
+    private int[] segmentPositions_; // position of each segment within the bundle, plus the total length
+    private int numSegments_;
+    private long durationUs_; // playback duration of the frames, if the producer knows it
+    private long enqueueTimeNanos_;
+    private long streamPositionUs_; // media time of the first frame since the start of the stream
+
+    // bytes copied in through appendCopy(); kept across recycles so a pooled bundle stops allocating
+    private byte[] storage_;
+    private int storageUsed_;
+
+    private final AudioBundlePool pool_;
+
+    AudioBundle(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    AudioBundle(int initialCapacity, AudioBundlePool pool) {
+        pool_ = pool;
+        segments_ = new byte[initialCapacity][];
+        segmentOffsets_ = new int[initialCapacity];
+        segmentPositions_ = new int[initialCapacity + 1];
+        numSegments_ = 0;
+    }
+
+    public void addSegment(byte[] array) {
+        addSegment(array, 0, array.length);
+    }
+
+    public void addSegment(byte[] array, int offset, int length) {
+        if (numSegments_ == segments_.length) {
+            int newCapacity = Math.max(1, segments_.length * 2);
+            segments_ = Arrays.copyOf(segments_, newCapacity);
+            segmentOffsets_ = Arrays.copyOf(segmentOffsets_, newCapacity);
+            segmentPositions_ = Arrays.copyOf(segmentPositions_, newCapacity + 1);
+        }
+        segments_[numSegments_] = array;
+        segmentOffsets_[numSegments_] = offset;
+        segmentPositions_[numSegments_ + 1] = segmentPositions_[numSegments_] + length;
+        numSegments_++;
+    }
+
+    /**
+     * Adds a segment holding a copy of the given bytes, for frames that live in a buffer the
+     * caller is about to reuse.
+     */
+    public void appendCopy(byte[] array, int offset, int length) {
+        if (storage_ == null || storageUsed_ + length > storage_.length) {
+            growStorage(storageUsed_ + length);
+        }
+        System.arraycopy(array, offset, storage_, storageUsed_, length);
+        addSegment(storage_, storageUsed_, length);
+        storageUsed_ += length;
+    }
+
+    /** Like appendCopy(byte[], int, int), for a frame held in a (possibly memory-mapped) buffer. */
+    public void appendCopy(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (storage_ == null || storageUsed_ + length > storage_.length) {
+            growStorage(storageUsed_ + length);
+        }
+        frame.duplicate().get(storage_, storageUsed_, length);
+        addSegment(storage_, storageUsed_, length);
+        storageUsed_ += length;
+    }
+
+    /** Appends a copy of every segment of other, keeping the frame boundaries. */
+    public void appendCopy(AudioBundle other) {
+        for (int i = 0; i < other.numSegments_; i++) {
+            appendCopy(other.segments_[i], other.segmentOffsets_[i], other.getSegmentLength(i));
+        }
+        durationUs_ += other.durationUs_;
+    }
+
+    /**
+     * Drops the first count frames, e.g. to catch up with the live edge. The duration and
+     * stream position move on by those frames' share of the bundle duration.
+     */
+    public void trimFront(int count) {
+        count = Math.min(count, numSegments_);
+        if (count <= 0) return;
+        long trimmedUs = durationUs_ * count / numSegments_;
+        int trimmedBytes = segmentPositions_[count];
+        int remaining = numSegments_ - count;
+        System.arraycopy(segments_, count, segments_, 0, remaining);
+        System.arraycopy(segmentOffsets_, count, segmentOffsets_, 0, remaining);
+        for (int i = 0; i <= remaining; i++) {
+            segmentPositions_[i] = segmentPositions_[i + count] - trimmedBytes;
+        }
+        Arrays.fill(segments_, remaining, numSegments_, null);
+        numSegments_ = remaining;
+        durationUs_ -= trimmedUs;
+        streamPositionUs_ += trimmedUs;
+    }
+
+    public int getNumSegments() { return numSegments_; }
+
+    public int getSegmentLength(int index) {
+        return segmentPositions_[index + 1] - segmentPositions_[index];
+    }
+
+    /** Puts the bytes of one segment (one frame, for bundles built by StreamFrameBundler) into dest. */
+    public void copySegmentTo(int index, ByteBuffer dest) {
+        dest.put(segments_[index], segmentOffsets_[index], getSegmentLength(index));
+    }
+
+    public int getCapacity() { return segments_.length; }
+
+    public void addDurationUs(long durationUs) { durationUs_ += durationUs; }
+
+    public long getDurationUs() { return durationUs_; }
+
+    public void setStreamPositionUs(long positionUs) { streamPositionUs_ = positionUs; }
+
+    public long getStreamPositionUs() { return streamPositionUs_; }
+
+    void setEnqueueTimeNanos(long nanos) { enqueueTimeNanos_ = nanos; }
+
+    long getEnqueueTimeNanos() { return enqueueTimeNanos_; }
+
+    public int getLength() { return segmentPositions_[numSegments_]; }
+
+    /**
+     * Copies up to length bytes starting at position into dest.
+     *
+     * @return the number of bytes copied, or -1 if position is at or past the end of the bundle
+     */
+    public int readAt(long position, byte[] dest, int destOffset, int length) {
+        int bundleLength = getLength();
+        if (position < 0 || position >= bundleLength) {
+            return -1;
+        }
+        int pos = (int) position;
+        int remaining = Math.min(length, bundleLength - pos);
+        int read = 0;
+        int segment = findSegment(pos);
+        while (remaining > 0) {
+            int inSegment = pos - segmentPositions_[segment];
+            int chunk = Math.min(remaining, segmentPositions_[segment + 1] - pos);
+            System.arraycopy(segments_[segment], segmentOffsets_[segment] + inSegment,
+                    dest, destOffset + read, chunk);
+            read += chunk;
+            pos += chunk;
+            remaining -= chunk;
+            segment++;
+        }
+        return read;
+    }
+
+    /** Flattens the bundle into a new array; meant for tests and debugging, not the playback path. */
+    public byte[] toByteArray() {
+        byte[] out = new byte[getLength()];
+        readAt(0, out, 0, out.length);
+        return out;
+    }
+
+    /** Returns this bundle to the pool it was leased from, if any. */
+    public void recycle() {
+        if (pool_ != null) {
+            pool_.release(this);
+        }
+    }
+
+    // drops the frame references so recycled bundles do not keep old frames alive
+    void clear() {
+        Arrays.fill(segments_, 0, numSegments_, null);
+        numSegments_ = 0;
+        durationUs_ = 0;
+        enqueueTimeNanos_ = 0;
+        streamPositionUs_ = 0;
+        storageUsed_ = 0;
+    }
+
+    private void growStorage(int minLength) {
+        byte[] oldStorage = storage_;
+        int newLength = Math.max(minLength, oldStorage == null ? 2048 : oldStorage.length * 2);
+        storage_ = new byte[newLength];
+        if (oldStorage != null) {
+            System.arraycopy(oldStorage, 0, storage_, 0, storageUsed_);
+            for (int i = 0; i < numSegments_; i++) {
+                if (segments_[i] == oldStorage) {
+                    segments_[i] = storage_;
+                }
+            }
+        }
+    }
+
+    // index of the last segment starting at or before pos, skipping empty segments
+    private int findSegment(int pos) {
+        int low = 0;
+        int high = numSegments_ - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segmentPositions_[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+}
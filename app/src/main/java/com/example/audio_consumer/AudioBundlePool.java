@@ -0,0 +1,85 @@
+package com.example.audio_consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of recyclable AudioBundles. Size classes are powers of two of the frame
+ * capacity; each class keeps a fixed-size stack so leasing and releasing never allocate.
+ */
+public class AudioBundlePool {
+
+    private static final String TAG = "AudioBundlePool";
+
+    // capacities 1, 2, 4, ..., 2^(NUM_SIZE_CLASSES-1) frames
+    public final static int NUM_SIZE_CLASSES = 10;
+    public final static int DEFAULT_BUNDLES_PER_CLASS = 16;
+
+    private final AudioBundle[][] free_;
+    private final int[] freeCount_;
+
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+    private final AtomicLong discards_ = new AtomicLong();
+
+    public AudioBundlePool() {
+        this(DEFAULT_BUNDLES_PER_CLASS);
+    }
+
+    public AudioBundlePool(int bundlesPerClass) {
+        free_ = new AudioBundle[NUM_SIZE_CLASSES][bundlesPerClass];
+        freeCount_ = new int[NUM_SIZE_CLASSES];
+    }
+
+    /** Leases a bundle able to hold at least numFrames frames without growing. */
+    public AudioBundle acquire(int numFrames) {
+        int sizeClass = sizeClassFor(numFrames);
+        if (sizeClass < NUM_SIZE_CLASSES) {
+            synchronized (this) {
+                int count = freeCount_[sizeClass];
+                if (count > 0) {
+                    AudioBundle bundle = free_[sizeClass][count - 1];
+                    free_[sizeClass][count - 1] = null;
+                    freeCount_[sizeClass] = count - 1;
+                    hits_.incrementAndGet();
+                    return bundle;
+                }
+            }
+        }
+        misses_.incrementAndGet();
+        int capacity = sizeClass < NUM_SIZE_CLASSES ? 1 << sizeClass : numFrames;
+        return new AudioBundle(capacity, this);
+    }
+
+    /** Returns a bundle to the pool; the bundle must not be used by the caller afterwards. */
+    public void release(AudioBundle bundle) {
+        bundle.clear();
+        // a bundle that grew past its class is filed under the largest class it still fits
+        int sizeClass = 31 - Integer.numberOfLeadingZeros(Math.max(1, bundle.getCapacity()));
+        if (sizeClass < NUM_SIZE_CLASSES) {
+            synchronized (this) {
+                int count = freeCount_[sizeClass];
+                if (count < free_[sizeClass].length) {
+                    free_[sizeClass][count] = bundle;
+                    freeCount_[sizeClass] = count + 1;
+                    return;
+                }
+            }
+        }
+        discards_.incrementAndGet();
+    }
+
+    /** Number of acquire() calls served from the pool. */
+    public long getHits() { return hits_.get(); }
+
+    /** Number of acquire() calls that had to allocate a new bundle. */
+    public long getMisses() { return misses_.get(); }
+
+    /** Number of released bundles dropped because their size class was full or too large. */
+    public long getDiscards() { return discards_.get(); }
+
+    private static int sizeClassFor(int numFrames) {
+        if (numFrames <= 1) return 0;
+        return 32 - Integer.numberOfLeadingZeros(numFrames - 1);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.example.audio_consumer;
+
+import java.io.IOException;
+
+/**
+ * Something StreamPlayer can play bundles into. A sink plays one bundle at a time: after
+ * play() returns, exactly one of the listener callbacks fires once the sink is ready for the
+ * next bundle, and from then on the sink no longer touches the bundle.
+ */
+public interface AudioSink {
+
+    interface Listener {
+        void onBundleFinished(AudioBundle bundle);
+        void onBundleFailed(AudioBundle bundle, String reason);
+    }
+
+    /**
+     * Implemented by sinks that buffer audio past play() and can tell how much of it has not
+     * been heard yet, so PlayoutClock can follow what is audible rather than play() calls.
+     */
+    interface RenderedPosition {
+        /** Duration of the audio handed to play() that has not been rendered yet, or -1 while unknown. */
+        long getUnrenderedUs();
+    }
+
+    void open(Listener listener) throws IOException;
+
+    /**
+     * Starts playing bundle. Returns once playback has started; how long that takes is the
+     * per-bundle setup cost of the sink.
+     *
+     * @throws IOException if the bundle could not be started, in which case no listener
+     *                     callback fires for it
+     */
+    void play(AudioBundle bundle) throws IOException;
+
+    void close();
+
+}
@@ -0,0 +1,223 @@
+package com.example.audio_consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer / single-consumer ring of bundles. Offering and taking are
+ * lock-free and allocation-free; a thread only parks when it has to wait. What happens when
+ * the producer outruns the consumer is decided by the OverflowPolicy.
+ *
+ * The producer may drop from the head under DROP_OLDEST and SKIP_TO_LIVE, so the head index
+ * is advanced by compare-and-set from both sides; the tail is only ever written by the producer.
+ */
+public class BundleRingBuffer {
+
+    private static final String TAG = "BundleRingBuffer";
+
+    public enum OverflowPolicy {
+        /** The producer waits for room. */
+        BLOCK,
+        /** The oldest queued bundle is dropped to make room. */
+        DROP_OLDEST,
+        /** The incoming bundle is dropped. */
+        DROP_NEWEST,
+        /**
+         * Like DROP_OLDEST, and in addition the oldest bundles are dropped whenever the audio
+         * queued exceeds the latency target, so playback stays close to the live edge.
+         */
+        SKIP_TO_LIVE
+    }
+
+    /** Told about every bundle the buffer throws away, e.g. to recycle it and count it. */
+    public interface DropListener {
+        void onDropped(AudioBundle bundle);
+    }
+
+    private final AtomicReferenceArray<AudioBundle> slots_;
+    private final int mask_;
+    private final OverflowPolicy policy_;
+    private final long maxQueuedDurationUs_;
+    private final DropListener dropListener_;
+
+    private final AtomicLong head_ = new AtomicLong(); // next slot to take
+    private final AtomicLong tail_ = new AtomicLong(); // next slot to fill
+    private final AtomicLong queuedDurationUs_ = new AtomicLong();
+    private final AtomicLong drops_ = new AtomicLong();
+    private volatile int highWaterMark_ = 0;
+
+    // a waiter publishes itself before re-checking the index the other side writes, and the
+    // other side writes that index before reading the waiter, so a wakeup is never missed
+    private volatile Thread waitingConsumer_;
+    private volatile Thread waitingProducer_;
+    private volatile boolean wakeRequested_ = false;
+
+    /**
+     * @param capacity          number of slots, rounded up to a power of two
+     * @param maxQueuedMs       latency target for SKIP_TO_LIVE, ignored by the other policies
+     */
+    public BundleRingBuffer(int capacity, OverflowPolicy policy, long maxQueuedMs, DropListener dropListener) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots_ = new AtomicReferenceArray<AudioBundle>(slots);
+        mask_ = slots - 1;
+        policy_ = policy;
+        maxQueuedDurationUs_ = maxQueuedMs * 1000;
+        dropListener_ = dropListener;
+    }
+
+    /**
+     * Adds bundle at the tail. Producer thread only.
+     *
+     * @return false if the bundle was dropped instead
+     * @throws InterruptedException if interrupted while waiting for room under BLOCK
+     */
+    public boolean offer(AudioBundle bundle) throws InterruptedException {
+        long tail = tail_.get();
+        while (tail - head_.get() > mask_) {
+            if (policy_ == OverflowPolicy.BLOCK) {
+                waitingProducer_ = Thread.currentThread();
+                if (tail - head_.get() > mask_) {
+                    LockSupport.park(this);
+                }
+                waitingProducer_ = null;
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            else if (policy_ == OverflowPolicy.DROP_NEWEST) {
+                drop(bundle);
+                return false;
+            }
+            else {
+                dropHead();
+            }
+        }
+
+        slots_.set((int) tail & mask_, bundle);
+        queuedDurationUs_.addAndGet(bundle.getDurationUs());
+        tail_.set(tail + 1);
+        int occupancy = (int) (tail + 1 - head_.get());
+        if (occupancy > highWaterMark_) highWaterMark_ = occupancy;
+        wake(waitingConsumer_);
+
+        if (policy_ == OverflowPolicy.SKIP_TO_LIVE) {
+            while (queuedDurationUs_.get() > maxQueuedDurationUs_ && size() > 1) {
+                dropHead();
+            }
+        }
+        return true;
+    }
+
+    /** Removes and returns the head bundle, or null if empty. Consumer thread only. */
+    public AudioBundle poll() {
+        while (true) {
+            long head = head_.get();
+            if (head == tail_.get()) return null;
+            AudioBundle bundle = slots_.get((int) head & mask_);
+            if (head_.compareAndSet(head, head + 1)) { // fails if the producer dropped it first
+                release(head, bundle);
+                queuedDurationUs_.addAndGet(-bundle.getDurationUs());
+                wake(waitingProducer_);
+                return bundle;
+            }
+        }
+    }
+
+    /**
+     * Waits for and removes the head bundle. Consumer thread only.
+     *
+     * @return null if wakeConsumer() was called while waiting, or before the call
+     */
+    public AudioBundle take() throws InterruptedException {
+        AudioBundle bundle;
+        while ((bundle = poll()) == null) {
+            if (wakeRequested_) {
+                wakeRequested_ = false;
+                return null;
+            }
+            waitingConsumer_ = Thread.currentThread();
+            if (isEmpty() && !wakeRequested_) {
+                LockSupport.park(this);
+            }
+            waitingConsumer_ = null;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return bundle;
+    }
+
+    /**
+     * Makes the consumer's take() return null without a bundle, e.g. so it can act on a
+     * request made while it waits. Any thread.
+     */
+    public void wakeConsumer() {
+        wakeRequested_ = true;
+        wake(waitingConsumer_);
+    }
+
+    /**
+     * Drops the head bundle through the drop listener, e.g. to enforce a memory budget.
+     * Producer thread only.
+     *
+     * @return false if the buffer was empty
+     */
+    public boolean dropOldest() {
+        while (!isEmpty()) {
+            if (dropHead()) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        long head = head_.get();
+        return (int) (tail_.get() - head);
+    }
+
+    public boolean isEmpty() {
+        return head_.get() == tail_.get();
+    }
+
+    public int getCapacity() { return slots_.length(); }
+
+    /** Playback duration of the bundles currently queued. */
+    public long getQueuedDurationUs() { return queuedDurationUs_.get(); }
+
+    /** Bundles thrown away by the overflow policy so far. */
+    public long getDropCount() { return drops_.get(); }
+
+    /** Highest number of bundles that were queued at once. */
+    public int getHighWaterMark() { return highWaterMark_; }
+
+    public OverflowPolicy getPolicy() { return policy_; }
+
+    private boolean dropHead() {
+        long head = head_.get();
+        if (head == tail_.get()) return false;
+        AudioBundle bundle = slots_.get((int) head & mask_);
+        if (head_.compareAndSet(head, head + 1)) { // fails if the consumer took it first
+            release(head, bundle);
+            queuedDurationUs_.addAndGet(-bundle.getDurationUs());
+            drop(bundle);
+            return true;
+        }
+        return false;
+    }
+
+    // forgets a taken slot so the ring does not keep the bundle reachable; by the time the
+    // head has moved the producer may already have refilled the slot, hence compare-and-set
+    private void release(long head, AudioBundle bundle) {
+        slots_.compareAndSet((int) head & mask_, bundle, null);
+    }
+
+    private void drop(AudioBundle bundle) {
+        drops_.incrementAndGet();
+        if (dropListener_ != null) {
+            dropListener_.onDropped(bundle);
+        }
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+}
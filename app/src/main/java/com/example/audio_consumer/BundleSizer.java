@@ -0,0 +1,115 @@
+package com.example.audio_consumer;
+
+import android.util.Log;
+
+/**
+ * Decides how much audio goes into a bundle. Bundles are sized by duration rather than frame
+ * count, and the duration adapts to what the player reports: it grows when MediaPlayer
+ * prepare() eats a large share of each bundle or the player was starved, i.e. sat with
+ * nothing to play before a bundle, and shrinks towards lower latency while playback is
+ * healthy. A bundle never holds more audio than the latency
+ * target, since it has to be complete before it can be played.
+ */
+public class BundleSizer {
+
+    private static final String TAG = "BundleSizer";
+
+    public static final long DEFAULT_TARGET_LATENCY_MS = 3000;
+    // ten 1024 sample frames at 8 kHz, the old fixed bundle size for the test stream
+    public static final long DEFAULT_INITIAL_BUNDLE_DURATION_MS = 1280;
+    public static final long DEFAULT_MIN_BUNDLE_DURATION_MS = 200;
+
+    // prepare() overhead, as a share of bundle duration, above which bundles grow ...
+    private static final double MAX_PREPARE_OVERHEAD = 0.10;
+    // ... and below which they may shrink
+    private static final double LOW_PREPARE_OVERHEAD = 0.05;
+    // starvation shorter than this is scheduling noise, not an underrun
+    static final long STARVATION_THRESHOLD_MS = 20;
+    // consecutive healthy bundles required before shrinking
+    private static final int HEALTHY_BUNDLES_BEFORE_SHRINK = 4;
+    private static final double GROW_FACTOR = 1.25;
+    private static final double SHRINK_FACTOR = 0.8;
+
+    public interface OnSizeChangeListener {
+        void onBundleDurationChanged(long oldDurationMs, long newDurationMs, String reason);
+    }
+
+    private final long targetLatencyMs_;
+    private final long minBundleDurationMs_;
+
+    private long bundleDurationMs_;
+    private double prepareMsAverage_ = 0;
+    private int healthyBundles_ = 0;
+    private int numChanges_ = 0;
+    private String lastChangeReason_ = "initial size";
+    private OnSizeChangeListener listener_;
+
+    public BundleSizer() {
+        this(DEFAULT_TARGET_LATENCY_MS, DEFAULT_MIN_BUNDLE_DURATION_MS, DEFAULT_INITIAL_BUNDLE_DURATION_MS);
+    }
+
+    public BundleSizer(long targetLatencyMs, long minBundleDurationMs, long initialBundleDurationMs) {
+        targetLatencyMs_ = targetLatencyMs;
+        minBundleDurationMs_ = Math.min(minBundleDurationMs, targetLatencyMs);
+        bundleDurationMs_ = clamp(initialBundleDurationMs);
+    }
+
+    public synchronized void setOnSizeChangeListener(OnSizeChangeListener listener) {
+        listener_ = listener;
+    }
+
+    public synchronized long getBundleDurationMs() { return bundleDurationMs_; }
+
+    public long getTargetLatencyMs() { return targetLatencyMs_; }
+
+    /** Why the bundle duration last changed, e.g. for a field-tuning overlay. */
+    public synchronized String getLastChangeReason() { return lastChangeReason_; }
+
+    public synchronized int getNumChanges() { return numChanges_; }
+
+    public synchronized double getAveragePrepareMs() { return prepareMsAverage_; }
+
+    /**
+     * Reported by the player each time a bundle starts playing.
+     *
+     * @param prepareMs   how long preparing the bundle took
+     * @param starvedMs   how long the player waited for this bundle to arrive after the
+     *                    previous one finished; 0 if it was already queued
+     */
+    public synchronized void onBundleStarted(long prepareMs, long starvedMs) {
+        prepareMsAverage_ = prepareMsAverage_ == 0 ? prepareMs : 0.8 * prepareMsAverage_ + 0.2 * prepareMs;
+        double overhead = prepareMsAverage_ / bundleDurationMs_;
+
+        if (starvedMs > STARVATION_THRESHOLD_MS) {
+            healthyBundles_ = 0;
+            resize((long) (bundleDurationMs_ * GROW_FACTOR), "player starved for " + starvedMs + " ms");
+        }
+        else if (overhead > MAX_PREPARE_OVERHEAD) {
+            healthyBundles_ = 0;
+            resize((long) (bundleDurationMs_ * GROW_FACTOR),
+                    "prepare() took " + Math.round(overhead * 100) + "% of the bundle duration");
+        }
+        else if (overhead < LOW_PREPARE_OVERHEAD && ++healthyBundles_ >= HEALTHY_BUNDLES_BEFORE_SHRINK) {
+            healthyBundles_ = 0;
+            resize((long) (bundleDurationMs_ * SHRINK_FACTOR), "playback healthy, trading headroom for latency");
+        }
+    }
+
+    private void resize(long durationMs, String reason) {
+        long newDurationMs = clamp(durationMs);
+        if (newDurationMs == bundleDurationMs_) return;
+        long oldDurationMs = bundleDurationMs_;
+        bundleDurationMs_ = newDurationMs;
+        lastChangeReason_ = reason;
+        numChanges_++;
+        Log.d(TAG, "Bundle duration " + oldDurationMs + " ms -> " + newDurationMs + " ms: " + reason);
+        if (listener_ != null) {
+            listener_.onBundleDurationChanged(oldDurationMs, newDurationMs, reason);
+        }
+    }
+
+    private long clamp(long durationMs) {
+        return Math.max(minBundleDurationMs_, Math.min(targetLatencyMs_, durationMs));
+    }
+
+}
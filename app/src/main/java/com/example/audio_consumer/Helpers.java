@@ -14,6 +14,13 @@ public class Helpers {
 
     public static final byte[] temp_key = new byte[] {1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
 
+    // per-bundle debug logging, off by default so release builds keep it off the hot path
+    private static volatile boolean verboseLogging_ = false;
+
+    public static void setVerboseLogging(boolean enabled) { verboseLogging_ = enabled; }
+
+    public static boolean isVerboseLogging() { return verboseLogging_; }
+
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
     public static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
@@ -62,16 +69,19 @@ public class Helpers {
     }
 
     public static void printFileAsHexString(String TAG, String path) {
-        byte[] buf = new byte[20000];
-        byte[] real_contents = null;
+        File file = new File(path);
+        byte[] real_contents = new byte[(int) file.length()];
 
         FileInputStream is = null;
         int read_size = 0;
         try {
-            is = new FileInputStream(path);
-            read_size = is.available();
-            is.read(buf, 0, read_size);
-            real_contents = Arrays.copyOf(buf, read_size);
+            is = new FileInputStream(file);
+            int n;
+            while (read_size < real_contents.length &&
+                    (n = is.read(real_contents, read_size, real_contents.length - read_size)) > 0) {
+                read_size += n;
+            }
+            is.close();
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -79,7 +89,7 @@ public class Helpers {
         }
 
         Log.d(TAG, "Contents of " + path + " (length: " + read_size + "):");
-        Helpers.printLongString(TAG, Helpers.bytesToHex(real_contents));
+        Helpers.printLongString(TAG, Helpers.bytesToHex(Arrays.copyOf(real_contents, read_size)));
     }
 
 }
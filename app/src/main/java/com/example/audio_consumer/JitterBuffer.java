@@ -0,0 +1,326 @@
+package com.example.audio_consumer;
+
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between network ingest and StreamFrameBundler. Frames are pushed with a sequence
+ * number in whatever order they arrive; they are handed to the bundler in sequence order once
+ * their playout time is reached. Duplicates and frames that arrive after their playout time
+ * are dropped, and a placeholder frame goes out in place of each lost frame so bundles keep a
+ * steady cadence. Until the first frame is released, frames up to capacity behind the first
+ * arrival are still accepted, so reordering at the very start of a stream loses nothing.
+ *
+ * The playout delay follows the measured inter-arrival jitter (the RFC 3550 estimator) within
+ * [minDelayMs, maxDelayMs], so a calm network runs with little buffering.
+ */
+public class JitterBuffer {
+
+    private static final String TAG = "JitterBuffer";
+
+    public static final long DEFAULT_MIN_DELAY_MS = 20;
+    public static final long DEFAULT_MAX_DELAY_MS = 1000;
+    // playout delay in multiples of the jitter estimate
+    private static final int JITTER_MULTIPLIER = 4;
+    private static final long TICK_MS = 10;
+
+    private final StreamFrameBundler bundler_;
+    private final long minDelayNs_;
+    private final long maxDelayNs_;
+
+    // slot seq % capacity holds frame seq while it waits
+    private final byte[][] slotData_;
+    private final int[] slotLength_;
+    private final long[] slotSeq_;
+
+    private final AdtsHeader header_ = new AdtsHeader();
+    private long frameDurationNs_ = AdtsHeader.DEFAULT_FRAME_DURATION_US * 1000;
+
+    private boolean started_ = false;  // a first frame has been seen
+    private boolean releasing_ = false; // a first frame has been released
+    private long baseSeq_;
+    private long nextSeq_;             // next frame to hand to the bundler
+    private long highestSeq_;
+    private long minTransitNs_;        // arrival minus media time of the fastest frame so far
+    private long lastTransitNs_;
+    private double jitterNs_ = 0;
+
+    private byte[] silenceFrame_;
+    private byte[] lastFrame_ = new byte[0];
+    private int lastFrameLength_ = 0;
+
+    private long framesReleased_ = 0;
+    private long framesConcealed_ = 0;
+    private long framesLate_ = 0;
+    private long framesDuplicate_ = 0;
+    private long framesTooEarly_ = 0;
+    private long framesInvalid_ = 0;
+
+    // frames taken out of the slots under the buffer lock and handed to the bundler outside it;
+    // releaseLock_ keeps concurrent releases in sequence order and owns the staging arrays
+    private final Object releaseLock_ = new Object();
+    private final byte[][] outData_;
+    private final int[] outLength_;
+
+    private final ScheduledExecutorService sharedTicker_;
+    private ScheduledExecutorService ownTicker_;
+    private ScheduledFuture<?> tick_;
+
+    public JitterBuffer(StreamFrameBundler bundler) {
+        this(bundler, 64, DEFAULT_MIN_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /**
+     * @param capacity  how many frames ahead of the playout point can be held
+     */
+    public JitterBuffer(StreamFrameBundler bundler, int capacity, long minDelayMs, long maxDelayMs) {
+        this(bundler, capacity, minDelayMs, maxDelayMs, null);
+    }
+
+    /**
+     * @param ticker  runs the playout timer, e.g. the scheduler of a StreamManager shared by
+     *                many streams; with null, start() starts a timer thread of its own
+     */
+    public JitterBuffer(StreamFrameBundler bundler, int capacity, long minDelayMs, long maxDelayMs,
+                        ScheduledExecutorService ticker) {
+        bundler_ = bundler;
+        sharedTicker_ = ticker;
+        minDelayNs_ = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        maxDelayNs_ = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        slotData_ = new byte[capacity][];
+        slotLength_ = new int[capacity];
+        slotSeq_ = new long[capacity];
+        outData_ = new byte[capacity][];
+        outLength_ = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slotSeq_[i] = -1;
+        }
+    }
+
+    /**
+     * Frame used in place of a lost one. Without one, the last frame released is repeated,
+     * which conceals short losses better than silence.
+     */
+    public synchronized void setSilenceFrame(byte[] frame) {
+        silenceFrame_ = frame;
+    }
+
+    /** Starts releasing frames on a timer as their playout time comes up. */
+    public synchronized void start() {
+        if (tick_ != null) return;
+        ScheduledExecutorService ticker = sharedTicker_;
+        if (ticker == null) {
+            ticker = ownTicker_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JitterBufferPlayout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        tick_ = ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                releaseDue(System.nanoTime());
+            }
+        }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (tick_ != null) {
+            tick_.cancel(false);
+            tick_ = null;
+        }
+        if (ownTicker_ != null) {
+            ownTicker_.shutdownNow();
+            ownTicker_ = null;
+        }
+    }
+
+    public void push(long seq, byte[] buf, int offset, int length) {
+        push(seq, buf, offset, length, System.nanoTime());
+    }
+
+    /** Adds a frame that arrived at arrivalNanos (System.nanoTime() time base). The bytes are copied. */
+    public synchronized void push(long seq, byte[] buf, int offset, int length, long arrivalNanos) {
+        if (seq < 0) {
+            framesInvalid_++;
+            return;
+        }
+        if (!started_) {
+            started_ = true;
+            baseSeq_ = seq;
+            nextSeq_ = seq;
+            highestSeq_ = seq;
+            minTransitNs_ = arrivalNanos;
+            lastTransitNs_ = arrivalNanos;
+            updateFrameDuration(buf, offset, length);
+        }
+        int slot = (int) (seq % slotData_.length);
+        if (seq < nextSeq_) {
+            if (!releasing_ && highestSeq_ - seq < slotData_.length) {
+                nextSeq_ = seq; // reordered ahead of the first arrival; start from it instead
+            }
+            else {
+                // a released frame stays in its slot until the slot is reused
+                if (slotSeq_[slot] == seq) {
+                    framesDuplicate_++;
+                } else {
+                    framesLate_++;
+                }
+                return;
+            }
+        }
+        if (seq >= nextSeq_ + slotData_.length) {
+            framesTooEarly_++;
+            return;
+        }
+        if (slotSeq_[slot] == seq) {
+            framesDuplicate_++;
+            return;
+        }
+
+        if (slotData_[slot] == null || slotData_[slot].length < length) {
+            slotData_[slot] = new byte[Math.max(length, 512)];
+        }
+        System.arraycopy(buf, offset, slotData_[slot], 0, length);
+        slotLength_[slot] = length;
+        slotSeq_[slot] = seq;
+        if (seq > highestSeq_) highestSeq_ = seq;
+
+        long transit = arrivalNanos - mediaTimeNs(seq);
+        if (transit < minTransitNs_) minTransitNs_ = transit;
+        jitterNs_ += (Math.abs(transit - lastTransitNs_) - jitterNs_) / 16;
+        lastTransitNs_ = transit;
+    }
+
+    /** Hands every frame whose playout time is at or before nowNanos to the bundler. */
+    public void releaseDue(long nowNanos) {
+        release(nowNanos, false);
+    }
+
+    /** Releases everything buffered regardless of playout time, e.g. at the end of a stream. */
+    public void drain() {
+        release(0, true);
+    }
+
+    public synchronized long getPlayoutDelayMs() { return TimeUnit.NANOSECONDS.toMillis(playoutDelayNs()); }
+
+    public synchronized double getJitterMs() { return jitterNs_ / 1000000.0; }
+
+    public synchronized long getFramesReleased() { return framesReleased_; }
+
+    /** Lost frames replaced by a placeholder. */
+    public synchronized long getFramesConcealed() { return framesConcealed_; }
+
+    /** Frames dropped because their playout time had already passed. */
+    public synchronized long getFramesLate() { return framesLate_; }
+
+    public synchronized long getFramesDuplicate() { return framesDuplicate_; }
+
+    /** Frames dropped because they were further ahead of the playout point than the buffer holds. */
+    public synchronized long getFramesTooEarly() { return framesTooEarly_; }
+
+    /** Frames dropped because their sequence number was negative. */
+    public synchronized long getFramesInvalid() { return framesInvalid_; }
+
+    // the bundler may block or flush, so it is only called with the buffer lock released and
+    // push() never waits for it
+    private void release(long nowNanos, boolean all) {
+        synchronized (releaseLock_) {
+            int count;
+            do {
+                synchronized (this) {
+                    count = collectDue(nowNanos, all);
+                }
+                for (int i = 0; i < count; i++) {
+                    bundler_.pushFrame(outData_[i], 0, outLength_[i]);
+                }
+            } while (count == outData_.length);
+        }
+    }
+
+    // stages up to a staging area's worth of due frames; caller holds the buffer lock
+    private int collectDue(long nowNanos, boolean all) {
+        if (!started_) return 0;
+        int count = 0;
+        while (count < outData_.length && nextSeq_ <= highestSeq_ &&
+                (all || playoutTimeNs(nextSeq_) <= nowNanos)) {
+            if (collectNext(count)) count++;
+        }
+        return count;
+    }
+
+    // stages frame nextSeq_, or a placeholder for it; false if there was nothing to stage
+    private boolean collectNext(int index) {
+        releasing_ = true;
+        int slot = (int) (nextSeq_ % slotData_.length);
+        boolean staged = true;
+        if (slotSeq_[slot] == nextSeq_) {
+            int length = slotLength_[slot];
+            updateFrameDuration(slotData_[slot], 0, length);
+            rememberLastFrame(slotData_[slot], length);
+            stage(index, slotData_[slot], length);
+            framesReleased_++;
+        }
+        else if (silenceFrame_ != null) {
+            stage(index, silenceFrame_, silenceFrame_.length);
+            framesConcealed_++;
+        }
+        else if (lastFrameLength_ > 0) {
+            stage(index, lastFrame_, lastFrameLength_);
+            framesConcealed_++;
+        }
+        else {
+            staged = false;
+        }
+        if (slotSeq_[slot] != nextSeq_ && Helpers.isVerboseLogging()) {
+            Log.d(TAG, "Frame " + nextSeq_ + " lost");
+        }
+        nextSeq_++;
+        return staged;
+    }
+
+    private void stage(int index, byte[] frame, int length) {
+        if (outData_[index] == null || outData_[index].length < length) {
+            outData_[index] = new byte[Math.max(length, 512)];
+        }
+        System.arraycopy(frame, 0, outData_[index], 0, length);
+        outLength_[index] = length;
+    }
+
+    private void rememberLastFrame(byte[] frame, int length) {
+        if (silenceFrame_ != null) return;
+        if (lastFrame_.length < length) {
+            lastFrame_ = new byte[length];
+        }
+        System.arraycopy(frame, 0, lastFrame_, 0, length);
+        lastFrameLength_ = length;
+    }
+
+    private void updateFrameDuration(byte[] buf, int offset, int length) {
+        if (length >= AdtsHeader.HEADER_LENGTH_NO_CRC && header_.wrap(buf, offset).isValid()) {
+            frameDurationNs_ = header_.getDurationNs();
+        }
+    }
+
+    private long mediaTimeNs(long seq) {
+        return (seq - baseSeq_) * frameDurationNs_;
+    }
+
+    private long playoutDelayNs() {
+        long delay = (long) (JITTER_MULTIPLIER * jitterNs_);
+        return Math.max(minDelayNs_, Math.min(maxDelayNs_, delay));
+    }
+
+    private long playoutTimeNs(long seq) {
+        return mediaTimeNs(seq) + minTransitNs_ + playoutDelayNs();
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.example.audio_consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets. Recording is a few
+ * atomic increments and never allocates; percentiles are resolved to the upper bound of the
+ * bucket they fall in, i.e. to within a factor of two.
+ */
+public class LatencyHistogram {
+
+    // bucket i holds values below 2^i us; the last one (2^39 us, about 6 days) catches the rest
+    private static final int NUM_BUCKETS = 40;
+
+    private final AtomicLongArray buckets_ = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count_ = new AtomicLong();
+    private final AtomicLong sumUs_ = new AtomicLong();
+    private final AtomicLong maxUs_ = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordUs(nanos / 1000);
+    }
+
+    public void recordUs(long us) {
+        if (us < 0) us = 0;
+        int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(us));
+        buckets_.incrementAndGet(bucket);
+        count_.incrementAndGet();
+        sumUs_.addAndGet(us);
+        long max;
+        while (us > (max = maxUs_.get()) && !maxUs_.compareAndSet(max, us)) { }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets_.get(i);
+        }
+        return new Snapshot(counts, count_.get(), sumUs_.get(), maxUs_.get());
+    }
+
+    /** Point-in-time copy; fields recorded concurrently with snapshot() may be off by one. */
+    public static class Snapshot {
+
+        private final long[] counts_;
+        public final long count;
+        public final long sumUs;
+        public final long maxUs;
+
+        Snapshot(long[] counts, long count, long sumUs, long maxUs) {
+            counts_ = counts;
+            this.count = count;
+            this.sumUs = sumUs;
+            this.maxUs = maxUs;
+        }
+
+        public long meanUs() {
+            return count == 0 ? 0 : sumUs / count;
+        }
+
+        /** Upper bound, in microseconds, of the bucket holding the given percentile (0-100). */
+        public long percentileUs(double percentile) {
+            long total = 0;
+            for (long c : counts_) total += c;
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts_.length; i++) {
+                seen += counts_[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(maxUs, i == 0 ? 0 : (1L << i) - 1);
+                }
+            }
+            return maxUs;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + meanUs() + "us p50=" + percentileUs(50) +
+                    "us p90=" + percentileUs(90) + "us p99=" + percentileUs(99) + "us max=" + maxUs + "us";
+        }
+
+    }
+
+}
@@ -4,30 +4,80 @@ package com.example.audio_consumer;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
 
+    // stored uncompressed (see aaptOptions in app/build.gradle) so it can be memory-mapped
+    private static final String TEST_STREAM_ASSET = "test_stream.aac";
+
     StreamFrameBundler streamFrameBundler_;
     StreamPlayer player_;
+    Thread feeder_;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        streamFrameBundler_ = new StreamFrameBundler(TestFrames.AAC);
-        byte[][] bundles = streamFrameBundler_.getBundles();
+        Helpers.setVerboseLogging(BuildConfig.DEBUG);
+
+        BundleSizer sizer = new BundleSizer();
 
         player_ = new StreamPlayer();
+        player_.setBundleSizer(sizer);
+        player_.setPlayoutClock(new PlayoutClock());
         player_.start();
-        for (int i = 0; i < bundles.length; i++) {
-            player_.giveAudioBundle(bundles[i]);
-        }
 
+        streamFrameBundler_ = new StreamFrameBundler(new StreamFrameBundler.BundleSink() {
+            @Override
+            public void onBundle(AudioBundle bundle) {
+                player_.giveAudioBundle(bundle);
+            }
+        }, StreamFrameBundler.DEFAULT_MAX_BUNDLE_WAIT_MS, new AudioBundlePool(), sizer);
+
+        // the player queue blocks once it is full, which for a long recording is most of its playback
+        feeder_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                feedTestStream();
+            }
+        }, "StreamFeeder");
+        feeder_.start();
 
+    }
 
+    @Override
+    protected void onDestroy() {
+        feeder_.interrupt(); // not joined: it may be waiting for room in the player queue
+        player_.stop();
+        super.onDestroy();
+    }
+
+    // pushes every frame of the test stream into the bundler, until done or interrupted
+    private void feedTestStream() {
+        AdtsFrameStore frameStore = null;
+        try {
+            frameStore = AdtsFrameStore.open(getAssets().openFd(TEST_STREAM_ASSET));
+            ByteBuffer frame;
+            for (int i = 0; !Thread.currentThread().isInterrupted() && (frame = frameStore.frame(i)) != null; i++) {
+                streamFrameBundler_.pushFrame(frame);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open " + TEST_STREAM_ASSET, e);
+        } finally {
+            streamFrameBundler_.close();
+            if (frameStore != null) {
+                try {
+                    frameStore.close();
+                } catch (IOException e) {}
+            }
+        }
     }
 
 }
@@ -0,0 +1,221 @@
+package com.example.audio_consumer;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Decodes ADTS frames with MediaCodec and streams the PCM into one long-lived AudioTrack, so
+ * there is no per-bundle prepare(). play() only hands the bundle to the decode thread; the
+ * bundle is reported finished as soon as all of its frames are queued into the decoder,
+ * while the AudioTrack buffer keeps playing the audio that was decoded before it.
+ */
+public class MediaCodecAudioSink implements AudioSink, AudioSink.RenderedPosition, Runnable {
+
+    private static final String TAG = "MediaCodecAudioSink";
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    private final LinkedBlockingQueue<AudioBundle> pending_ = new LinkedBlockingQueue<AudioBundle>(1);
+    private final MediaCodec.BufferInfo info_ = new MediaCodec.BufferInfo();
+    private final AdtsHeader header_ = new AdtsHeader();
+    private final byte[] headerBytes_ = new byte[AdtsHeader.HEADER_LENGTH_NO_CRC];
+
+    private Listener listener_;
+    private MediaCodec codec_;
+    private volatile AudioTrack track_;
+    private long presentationTimeUs_ = 0;
+
+    // rendered position: the track's playback head counts frames from the first buffer written to it
+    private volatile long handedUs_ = 0;        // audio handed to play(); only written by the player thread
+    private volatile long trackStartUs_ = -1;   // presentation time of the first buffer written to track_
+    private volatile int sampleRate_;
+
+    private volatile boolean running_ = false;
+    private Thread t_;
+
+    @Override
+    public void open(Listener listener) {
+        listener_ = listener;
+        running_ = true;
+        t_ = new Thread(this, TAG);
+        t_.start();
+    }
+
+    @Override
+    public void play(AudioBundle bundle) throws IOException {
+        if (!pending_.offer(bundle)) {
+            throw new IOException("play() called before the previous bundle finished");
+        }
+        handedUs_ += bundle.getDurationUs();
+    }
+
+    @Override
+    public long getUnrenderedUs() {
+        AudioTrack track = track_;
+        long startUs = trackStartUs_;
+        if (track == null || startUs < 0) return -1;
+        long headFrames = track.getPlaybackHeadPosition() & 0xffffffffL;
+        return Math.max(0, handedUs_ - startUs - headFrames * 1000000 / sampleRate_);
+    }
+
+    @Override
+    public void close() {
+        running_ = false;
+        if (t_ != null) {
+            t_.interrupt();
+            try {
+                t_.join();
+            } catch (InterruptedException e) {}
+            t_ = null;
+        }
+        // one callback per play(), even for a bundle the decode thread never got to
+        AudioBundle unplayed;
+        while ((unplayed = pending_.poll()) != null) {
+            listener_.onBundleFailed(unplayed, "sink closed");
+        }
+        if (codec_ != null) {
+            codec_.stop();
+            codec_.release();
+            codec_ = null;
+        }
+        if (track_ != null) {
+            track_.stop();
+            track_.release();
+            track_ = null;
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (running_) {
+
+            AudioBundle bundle = pending_.poll();
+            if (bundle == null) {
+                try {
+                    // nothing queued: play out what the decoder still holds, then wait for play()
+                    if (codec_ != null) drainOutput(DEQUEUE_TIMEOUT_US);
+                    bundle = pending_.take();
+                } catch (InterruptedException e) {
+                    break;
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Draining the decoder failed", e);
+                    continue;
+                }
+            }
+
+            try {
+                if (codec_ == null) {
+                    createCodec(bundle);
+                }
+                queueFrames(bundle);
+            } catch (Exception e) {
+                Log.e(TAG, "Decoding failed", e);
+                listener_.onBundleFailed(bundle, String.valueOf(e.getMessage()));
+                continue;
+            }
+            listener_.onBundleFinished(bundle);
+        }
+
+    }
+
+    private void createCodec(AudioBundle bundle) throws IOException {
+        if (bundle.readAt(0, headerBytes_, 0, headerBytes_.length) != headerBytes_.length ||
+                !header_.wrap(headerBytes_, 0).isValid()) {
+            throw new IOException("Bundle does not start with a valid ADTS header");
+        }
+        int sampleRate = header_.getSampleRate();
+        int channels = header_.getChannelConfiguration();
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channels);
+        format.setInteger(MediaFormat.KEY_IS_ADTS, 1);
+        // AudioSpecificConfig: object type, sampling frequency index, channel configuration
+        int config = ((header_.getProfile() + 1) << 11) |
+                (header_.getSamplingFrequencyIndex() << 7) | (channels << 3);
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[] { (byte) (config >> 8), (byte) config }));
+
+        codec_ = MediaCodec.createDecoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        codec_.configure(format, null, null, 0);
+        codec_.start();
+        Log.d(TAG, "Decoder started: " + sampleRate + " Hz, " + channels + " channel(s)");
+    }
+
+    private void queueFrames(AudioBundle bundle) {
+        int numFrames = bundle.getNumSegments();
+        long frameDurationUs = numFrames == 0 ? 0 : bundle.getDurationUs() / numFrames;
+        for (int i = 0; i < numFrames; i++) {
+            int inputIndex;
+            while ((inputIndex = codec_.dequeueInputBuffer(DEQUEUE_TIMEOUT_US)) < 0) {
+                drainOutput(0); // decoder is full; make room by playing what it produced
+            }
+            ByteBuffer input = codec_.getInputBuffer(inputIndex);
+            input.clear();
+            bundle.copySegmentTo(i, input);
+            codec_.queueInputBuffer(inputIndex, 0, bundle.getSegmentLength(i), presentationTimeUs_, 0);
+            presentationTimeUs_ += frameDurationUs;
+            drainOutput(0);
+        }
+    }
+
+    // writes all PCM the decoder has ready to the AudioTrack; blocking writes pace the sink in real time
+    private void drainOutput(long timeoutUs) {
+        while (true) {
+            int outputIndex = codec_.dequeueOutputBuffer(info_, timeoutUs);
+            if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                createAudioTrack(codec_.getOutputFormat());
+            }
+            else if (outputIndex >= 0) {
+                if (track_ == null) {
+                    createAudioTrack(codec_.getOutputFormat());
+                }
+                if (trackStartUs_ < 0) {
+                    trackStartUs_ = info_.presentationTimeUs;
+                }
+                ByteBuffer output = codec_.getOutputBuffer(outputIndex);
+                output.position(info_.offset);
+                output.limit(info_.offset + info_.size);
+                track_.write(output, info_.size, AudioTrack.WRITE_BLOCKING);
+                codec_.releaseOutputBuffer(outputIndex, false);
+            }
+            else if (outputIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                return;
+            }
+        }
+    }
+
+    private void createAudioTrack(MediaFormat format) {
+        if (track_ != null) {
+            track_.stop();
+            track_.release();
+        }
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        sampleRate_ = sampleRate;
+        trackStartUs_ = -1;
+        int channelMask = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) == 1 ?
+                AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        track_ = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(channelMask)
+                        .build())
+                .setBufferSizeInBytes(minBufferSize * 2)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+        track_.play();
+        Log.d(TAG, "AudioTrack started: " + sampleRate + " Hz, buffer " + minBufferSize * 2 + " bytes");
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.example.audio_consumer;
+
+import android.media.MediaPlayer;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Plays every bundle through its own AACADTSAudioBundleSource, with a full
+ * setDataSource() / prepare() / reset() cycle on a single MediaPlayer.
+ */
+public class MediaPlayerAudioSink implements AudioSink {
+
+    private static final String TAG = "MediaPlayerAudioSink";
+
+    private MediaPlayer player_;
+    private Listener listener_;
+    private volatile AudioBundle currentBundle_;
+
+    @Override
+    public void open(Listener listener) {
+        listener_ = listener;
+        player_ = new MediaPlayer();
+        player_.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer mediaPlayer) {
+                if (Helpers.isVerboseLogging()) Log.d(TAG, "Finished playing an audio bundle.");
+                mediaPlayer.reset();
+                listener_.onBundleFinished(currentBundle_);
+            }
+        });
+        player_.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+                mediaPlayer.reset();
+                listener_.onBundleFailed(currentBundle_, "MediaPlayer error (what: " + what + ", extra: " + extra + ")");
+                return true; // suppresses the completion callback
+            }
+        });
+    }
+
+    @Override
+    public void play(AudioBundle bundle) throws IOException {
+        currentBundle_ = bundle;
+        try {
+            player_.setDataSource(new AACADTSAudioBundleSource(bundle));
+            player_.prepare();
+        } catch (IOException e) {
+            player_.reset();
+            throw e;
+        } catch (RuntimeException e) {
+            player_.reset();
+            throw new IOException(e.getMessage());
+        }
+        player_.start();
+    }
+
+    @Override
+    public void close() {
+        if (player_ != null) {
+            player_.release();
+            player_ = null;
+        }
+    }
+
+}
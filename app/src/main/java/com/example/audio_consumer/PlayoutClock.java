@@ -0,0 +1,132 @@
+package com.example.audio_consumer;
+
+/**
+ * Maps bundle presentation times onto the wall clock. A bundle's presentation time is its
+ * stream position, which StreamFrameBundler works out from the ADTS frame count and sample
+ * rate. The clock is anchored when the first bundle starts, which fixes the latency the
+ * stream runs at; from then on every bundle has a wall-clock time it is due to start, and
+ * how late a bundle is against that time is the drift gaps between bundles have built up.
+ * Times passed in are when a bundle is, or will be, heard: StreamPlayer works them out from
+ * the sink's rendered position where the sink reports one, see AudioSink.RenderedPosition.
+ *
+ * Bundles that arrive after their due time move the anchor instead, see correctionUs(), and
+ * once bundles arrive ahead of time again the anchor moves back towards where it started.
+ *
+ * The clock also follows the live edge, the end of the newest bundle received, so the
+ * offset of playback from live can be read at any time.
+ */
+public class PlayoutClock {
+
+    // lateness tolerated before the player skips audio to catch up
+    public static final long DEFAULT_MAX_DRIFT_MS = 100;
+
+    private final long maxDriftUs_;
+
+    private long anchorNanos_ = Long.MIN_VALUE; // wall time at which presentation time 0 is due
+    private long initialAnchorNanos_;           // the anchor the first bundle set
+
+    // playback and live edge, written by the player and the producer respectively
+    private volatile long playingPtsUs_ = -1;
+    private volatile long playingSinceNanos_;
+    private volatile long playingDurationUs_;
+    private volatile long liveEdgeUs_ = -1;
+    private volatile long liveEdgeNanos_;
+    private volatile long newestPtsUs_ = -1;
+
+    private volatile long lastLatenessUs_ = 0;
+    private volatile long framesSkipped_ = 0;
+    private volatile long bundlesSkipped_ = 0;
+
+    public PlayoutClock() {
+        this(DEFAULT_MAX_DRIFT_MS);
+    }
+
+    public PlayoutClock(long maxDriftMs) {
+        maxDriftUs_ = maxDriftMs * 1000;
+    }
+
+    /** Player thread: how far behind its due time a bundle starting now would be; never negative. */
+    long latenessUs(long ptsUs, long nowNanos) {
+        if (anchorNanos_ == Long.MIN_VALUE) return 0;
+        return Math.max(0, (nowNanos - anchorNanos_) / 1000 - ptsUs);
+    }
+
+    /**
+     * Player thread: lateness that should be caught up by skipping audio, or 0, for a bundle
+     * that would be heard from nowNanos. Only the player's own drift counts: a bundle that
+     * reached the player after it was due was held up upstream, and skipping it would only
+     * turn a late bundle into lost audio, so the clock is moved back by that much instead and
+     * the stream runs at the higher latency.
+     *
+     * That latency is given back once upstream has caught up: when both this bundle and the
+     * newest one received arrived ahead of their due times, the anchor moves forward again
+     * by as much as neither would then be late, at most back to where it started. The
+     * lateness this returns then grows by the same amount, which the player skips.
+     */
+    long correctionUs(long ptsUs, long receivedNanos, long nowNanos) {
+        long arrivedLateUs = latenessUs(ptsUs, receivedNanos);
+        if (arrivedLateUs > 0) {
+            anchorNanos_ += arrivedLateUs * 1000;
+        }
+        else if (anchorNanos_ > initialAnchorNanos_ && newestPtsUs_ >= 0) {
+            long aheadUs = Math.min(aheadUs(ptsUs, receivedNanos), aheadUs(newestPtsUs_, liveEdgeNanos_));
+            long giveBackUs = Math.min((anchorNanos_ - initialAnchorNanos_) / 1000, aheadUs);
+            if (giveBackUs > 0) {
+                anchorNanos_ -= giveBackUs * 1000;
+            }
+        }
+        long lateUs = latenessUs(ptsUs, nowNanos);
+        return lateUs > maxDriftUs_ ? lateUs : 0;
+    }
+
+    // how long before its due time a bundle arrived; negative if it arrived late
+    private long aheadUs(long ptsUs, long receivedNanos) {
+        return (anchorNanos_ - receivedNanos) / 1000 + ptsUs;
+    }
+
+    /** Player thread: a bundle has started playing. */
+    void onBundleStarted(long ptsUs, long durationUs, long nowNanos) {
+        if (anchorNanos_ == Long.MIN_VALUE) {
+            anchorNanos_ = nowNanos - ptsUs * 1000;
+            initialAnchorNanos_ = anchorNanos_;
+        }
+        lastLatenessUs_ = latenessUs(ptsUs, nowNanos);
+        playingSinceNanos_ = nowNanos;
+        playingDurationUs_ = durationUs;
+        playingPtsUs_ = ptsUs;
+    }
+
+    void onFramesSkipped(int frames) { framesSkipped_ += frames; }
+
+    void onBundleSkipped() { bundlesSkipped_++; }
+
+    /** Producer thread: a bundle has been received. */
+    void onBundleReceived(long ptsUs, long durationUs, long nowNanos) {
+        liveEdgeNanos_ = nowNanos;
+        liveEdgeUs_ = ptsUs + durationUs;
+        newestPtsUs_ = ptsUs;
+    }
+
+    /**
+     * How far playback is behind the live edge, in microseconds, or -1 before anything has
+     * played. The live edge moves on in real time between bundles.
+     */
+    public long getOffsetFromLiveUs() {
+        long pts = playingPtsUs_;
+        long edge = liveEdgeUs_;
+        if (pts < 0 || edge < 0) return -1;
+        long now = System.nanoTime();
+        long position = pts + Math.min(playingDurationUs_, (now - playingSinceNanos_) / 1000);
+        return Math.max(0, edge + (now - liveEdgeNanos_) / 1000 - position);
+    }
+
+    /** How late the most recent bundle started against its presentation time, after correction. */
+    public long getLastLatenessUs() { return lastLatenessUs_; }
+
+    /** Frames cut from the front of bundles to catch up. */
+    public long getFramesSkipped() { return framesSkipped_; }
+
+    /** Whole queued bundles dropped to catch up. */
+    public long getBundlesSkipped() { return bundlesSkipped_; }
+
+}
@@ -2,105 +2,454 @@ package com.example.audio_consumer;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongBinaryOperator;
 
 public class StreamFrameBundler {
 
     private static final String TAG = "StreamFrameBundler";
 
+    // longest a partial bundle may wait for more frames before it is flushed anyway
+    public static final long DEFAULT_MAX_BUNDLE_WAIT_MS = 500;
+
+    // frames below which a getBundlesParallel() task does its work itself instead of splitting
+    private static final int PARALLEL_SPLIT_FRAMES = 4096;
+
+    /** Receives bundles as soon as they are complete, e.g. StreamPlayer.giveAudioBundle. */
+    public interface BundleSink {
+        void onBundle(AudioBundle bundle);
+    }
+
     private FrameBundler bundler_;
     private byte[][] streamData_;
+    private AudioBundlePool bundlePool_;
+    private BundleSizer sizer_;
+
+    private BundleSink sink_;
+    private long maxBundleWaitMs_;
+    private ScheduledExecutorService flushTimer_;
+    private boolean ownsFlushTimer_ = false;
+    private ScheduledFuture<?> pendingFlush_;
+    private long bundleGeneration_ = 0; // bumped every time a bundle is emitted
+    private boolean closed_ = false;
 
     StreamFrameBundler(byte[][] streamData) {
+        this(streamData, new AudioBundlePool());
+    }
+
+    StreamFrameBundler(byte[][] streamData, AudioBundlePool bundlePool) {
+        this(streamData, bundlePool, new BundleSizer());
+    }
+
+    StreamFrameBundler(byte[][] streamData, AudioBundlePool bundlePool, BundleSizer sizer) {
         streamData_ = streamData;
+        bundlePool_ = bundlePool;
+        sizer_ = sizer;
+        bundler_ = new FrameBundler();
+    }
+
+    StreamFrameBundler(BundleSink sink) {
+        this(sink, DEFAULT_MAX_BUNDLE_WAIT_MS, new AudioBundlePool(), new BundleSizer());
+    }
+
+    /**
+     * Creates a bundler for frames that arrive one at a time through pushFrame(). A bundle is
+     * handed to the sink once it is full, or maxBundleWaitMs after its first frame arrived,
+     * whichever comes first. A maxBundleWaitMs of 0 disables the time-based flush. How much
+     * audio makes a full bundle is decided by sizer.
+     */
+    StreamFrameBundler(BundleSink sink, long maxBundleWaitMs, AudioBundlePool bundlePool,
+                       BundleSizer sizer) {
+        this(sink, maxBundleWaitMs, bundlePool, sizer, null);
+    }
+
+    /**
+     * Like the constructor above, with the time-based flush run on flushTimer, e.g. the
+     * scheduler of a StreamManager shared by many streams. With a null flushTimer the bundler
+     * starts a timer thread of its own.
+     */
+    StreamFrameBundler(BundleSink sink, long maxBundleWaitMs, AudioBundlePool bundlePool,
+                       BundleSizer sizer, ScheduledExecutorService flushTimer) {
+        sink_ = sink;
+        maxBundleWaitMs_ = maxBundleWaitMs;
+        bundlePool_ = bundlePool;
+        sizer_ = sizer;
         bundler_ = new FrameBundler();
+        if (maxBundleWaitMs_ > 0 && flushTimer != null) {
+            flushTimer_ = flushTimer;
+        }
+        else if (maxBundleWaitMs_ > 0) {
+            ownsFlushTimer_ = true;
+            flushTimer_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "StreamFrameBundlerFlush");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
     }
 
-    public byte[][] getBundles() {
+    public AudioBundlePool getBundlePool() { return bundlePool_; }
 
-        int total_num_bundles = streamData_.length / bundler_.getMaxBundleSize();
-        if (streamData_.length % bundler_.getMaxBundleSize() != 0) total_num_bundles++;
+    public BundleSizer getBundleSizer() { return sizer_; }
 
-        byte[][] bundles = new byte[total_num_bundles][];
-        int current_bundle_index = 0;
+    public AudioBundle[] getBundles() {
 
-        Log.d(TAG, "Total number of frames: " + streamData_.length + "\n" +
-                        "Max bundle size: " + bundler_.getMaxBundleSize() + "\n" +
-                        "Total number of bundles: " + total_num_bundles);
+        ArrayList<AudioBundle> bundles = new ArrayList<AudioBundle>();
 
-        for (int i = 0; i < streamData_.length-1; i++) {
+        for (int i = 0; i < streamData_.length; i++) {
             bundler_.addIntermediateFrame(streamData_[i]);
             if (bundler_.hasFullBundle()) {
-                bundles[current_bundle_index] = bundler_.getCurrentBundle();
-                current_bundle_index++;
+                bundles.add(bundler_.getCurrentBundle());
+            }
+        }
+        if (bundler_.getCurrentBundleSize() > 0) {
+            bundles.add(bundler_.getCurrentBundle());
+        }
+
+        Log.d(TAG, "Total number of frames: " + streamData_.length + "\n" +
+                        "Bundle duration (ms): " + sizer_.getBundleDurationMs() + "\n" +
+                        "Total number of bundles: " + bundles.size());
+
+        return bundles.toArray(new AudioBundle[bundles.size()]);
+
+    }
+
+    /**
+     * The same bundles as getBundles(), built on the common fork-join pool for long recordings.
+     * Frame headers are parsed concurrently, and a parallel prefix sum turns the frame
+     * durations into stream positions, so each bundle boundary is found by binary search
+     * instead of a walk over every frame. The bundles are then filled concurrently; like
+     * getBundles(), they refer to the frames rather than copying them.
+     */
+    public AudioBundle[] getBundlesParallel() {
+
+        int numFrames = streamData_.length;
+        if (numFrames == 0) return new AudioBundle[0];
+
+        // frame durations, -1 where a header does not parse; those take the previous frame's,
+        // as in the sequential path, which is an associative carry-forward
+        long[] endsUs = new long[numFrames];
+        ForkJoinPool.commonPool().invoke(new ParseTask(streamData_, endsUs, 0, numFrames));
+        if (endsUs[0] < 0) endsUs[0] = bundler_.frameDurationUs_;
+        Arrays.parallelPrefix(endsUs, new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return right >= 0 ? right : left;
             }
+        });
+        bundler_.frameDurationUs_ = endsUs[numFrames - 1];
+        Arrays.parallelPrefix(endsUs, new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return left + right;
+            }
+        });
+
+        // same rule as the sequential path: a bundle closes on the frame that fills it
+        long bundleDurationUs = sizer_.getBundleDurationMs() * 1000;
+        int[] bundleStarts = new int[numFrames + 1];
+        int numBundles = 0;
+        int start = 0;
+        while (start < numFrames) {
+            long startUs = start == 0 ? 0 : endsUs[start - 1];
+            int last = firstAtLeast(endsUs, start, numFrames - 1, startUs + bundleDurationUs);
+            bundleStarts[numBundles++] = start;
+            start = last + 1;
         }
+        bundleStarts[numBundles] = numFrames;
+
+        AudioBundle[] bundles = new AudioBundle[numBundles];
+        ForkJoinPool.commonPool().invoke(new FillTask(streamData_, endsUs, bundleStarts, bundles, bundlePool_,
+                bundler_.streamPositionUs_, 0, numBundles));
+        bundler_.streamPositionUs_ += endsUs[numFrames - 1];
 
-        bundles[current_bundle_index] =
-                bundler_.addFinalFrameAndGetLastBundle(streamData_[streamData_.length-1]);
+        Log.d(TAG, "Total number of frames: " + numFrames + "\n" +
+                        "Bundle duration (ms): " + sizer_.getBundleDurationMs() + "\n" +
+                        "Total number of bundles: " + numBundles + " (parallel)");
 
         return bundles;
 
     }
 
+    // index of the first of values[from..to] that is at least target, or to if there is none
+    private static int firstAtLeast(long[] values, int from, int to, long target) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (values[mid] >= target) {
+                to = mid;
+            } else {
+                from = mid + 1;
+            }
+        }
+        return from;
+    }
+
+    public synchronized void pushFrame(byte[] frame) {
+        if (rejectIfClosed()) return;
+        bundler_.addIntermediateFrame(frame);
+        onFrameAdded();
+    }
+
+    private void onFrameAdded() {
+        if (bundler_.hasFullBundle()) {
+            emitCurrentBundle();
+        }
+        else if (bundler_.getCurrentBundleSize() == 1 && flushTimer_ != null) {
+            final long generation = bundleGeneration_;
+            pendingFlush_ = flushTimer_.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushIfStillPending(generation);
+                }
+            }, maxBundleWaitMs_, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Pushes a frame held in a buffer the caller will reuse; the bytes are copied into the bundle. */
+    public synchronized void pushFrame(byte[] buf, int offset, int length) {
+        if (rejectIfClosed()) return;
+        bundler_.addIntermediateFrame(buf, offset, length);
+        onFrameAdded();
+    }
+
+    /** Pushes a frame held in a ByteBuffer, e.g. a slice from AdtsFrameStore; the bytes are copied. */
+    public synchronized void pushFrame(ByteBuffer frame) {
+        if (rejectIfClosed()) return;
+        bundler_.addIntermediateFrame(frame);
+        onFrameAdded();
+    }
+
+    /** Hands the current partial bundle, if any, to the sink. */
+    public synchronized void flush() {
+        if (bundler_.getCurrentBundleSize() > 0) {
+            emitCurrentBundle();
+        }
+    }
+
+    /**
+     * Flushes the last partial bundle and stops the flush timer, if the bundler started its
+     * own. Frames pushed after close() are dropped.
+     */
+    public synchronized void close() {
+        if (closed_) return;
+        flush();
+        closed_ = true;
+        if (flushTimer_ != null && ownsFlushTimer_) {
+            flushTimer_.shutdownNow();
+        }
+    }
+
+    private boolean rejectIfClosed() {
+        if (closed_) {
+            Log.w(TAG, "Frame pushed after close(), dropped");
+        }
+        return closed_;
+    }
+
+    private synchronized void flushIfStillPending(long generation) {
+        if (generation == bundleGeneration_ && bundler_.getCurrentBundleSize() > 0) {
+            if (Helpers.isVerboseLogging()) Log.d(TAG, "Flushing partial bundle of " + bundler_.getCurrentBundleSize() +
+                    " frames after " + maxBundleWaitMs_ + " ms");
+            emitCurrentBundle();
+        }
+    }
+
+    private void emitCurrentBundle() {
+        bundleGeneration_++;
+        if (pendingFlush_ != null) {
+            pendingFlush_.cancel(false);
+            pendingFlush_ = null;
+        }
+        sink_.onBundle(bundler_.getCurrentBundle());
+    }
+
+    // stores the duration of frames [from, to) in durationsUs, or -1 for a frame without a valid header
+    private static class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] frames_;
+        private final long[] durationsUs_;
+        private final int from_;
+        private final int to_;
+
+        ParseTask(byte[][] frames, long[] durationsUs, int from, int to) {
+            frames_ = frames;
+            durationsUs_ = durationsUs;
+            from_ = from;
+            to_ = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to_ - from_ > PARALLEL_SPLIT_FRAMES) {
+                int mid = (from_ + to_) >>> 1;
+                invokeAll(new ParseTask(frames_, durationsUs_, from_, mid),
+                        new ParseTask(frames_, durationsUs_, mid, to_));
+                return;
+            }
+            AdtsHeader header = new AdtsHeader();
+            for (int f = from_; f < to_; f++) {
+                byte[] frame = frames_[f];
+                durationsUs_[f] = frame.length >= AdtsHeader.HEADER_LENGTH_NO_CRC && header.wrap(frame, 0).isValid() ?
+                        header.getDurationUs() : -1;
+            }
+        }
+
+    }
+
+    // builds bundles [from, to) from references to their frames, positioned by the frame end times
+    private static class FillTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] frames_;
+        private final long[] frameEndsUs_;
+        private final int[] bundleStarts_;
+        private final AudioBundle[] bundles_;
+        private final AudioBundlePool pool_;
+        private final long basePositionUs_;
+        private final int from_;
+        private final int to_;
+
+        FillTask(byte[][] frames, long[] frameEndsUs, int[] bundleStarts, AudioBundle[] bundles,
+                 AudioBundlePool pool, long basePositionUs, int from, int to) {
+            frames_ = frames;
+            frameEndsUs_ = frameEndsUs;
+            bundleStarts_ = bundleStarts;
+            bundles_ = bundles;
+            pool_ = pool;
+            basePositionUs_ = basePositionUs;
+            from_ = from;
+            to_ = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to_ - from_ > 1 && bundleStarts_[to_] - bundleStarts_[from_] > PARALLEL_SPLIT_FRAMES) {
+                int mid = (from_ + to_) >>> 1;
+                invokeAll(new FillTask(frames_, frameEndsUs_, bundleStarts_, bundles_, pool_, basePositionUs_, from_, mid),
+                        new FillTask(frames_, frameEndsUs_, bundleStarts_, bundles_, pool_, basePositionUs_, mid, to_));
+                return;
+            }
+            for (int b = from_; b < to_; b++) {
+                int first = bundleStarts_[b];
+                int end = bundleStarts_[b + 1];
+                AudioBundle bundle = pool_.acquire(end - first);
+                for (int f = first; f < end; f++) {
+                    bundle.addSegment(frames_[f]);
+                }
+                long startUs = first == 0 ? 0 : frameEndsUs_[first - 1];
+                bundle.addDurationUs(frameEndsUs_[end - 1] - startUs);
+                bundle.setStreamPositionUs(basePositionUs_ + startUs);
+                bundles_[b] = bundle;
+            }
+        }
+
+    }
+
     private class FrameBundler {
 
         private final static String TAG = "FrameBundler";
 
-        // number of frames per audio bundle
-        public final static int MAX_BUNDLE_SIZE = 10;
-
-        private ArrayList<byte[]> bundle_;
+        private AudioBundle bundle_;
         private int current_bundle_size_; // number of frames in current bundle
+        private final AdtsHeader header_ = new AdtsHeader();
+        private final byte[] headerBytes_ = new byte[AdtsHeader.HEADER_LENGTH_NO_CRC];
+        private long frameDurationUs_ = AdtsHeader.DEFAULT_FRAME_DURATION_US; // of the last parsable frame
+        private long streamPositionUs_ = 0; // media time at which the next bundle starts
 
         FrameBundler() {
-            bundle_ = new ArrayList<byte[]>();
+            bundle_ = null;
             current_bundle_size_ = 0;
         }
 
-        public int getMaxBundleSize() {return MAX_BUNDLE_SIZE; }
-
         public int getCurrentBundleSize() {
             return current_bundle_size_;
         }
 
         public boolean addIntermediateFrame(byte[] frame) {
-            if (current_bundle_size_ == MAX_BUNDLE_SIZE)
+            if (hasFullBundle())
+                return false;
+
+            AudioBundle bundle = leaseBundleIfNeeded();
+            bundle.addSegment(frame);
+            bundle.addDurationUs(frameDurationUs(frame, 0, frame.length));
+            current_bundle_size_++;
+
+            return true;
+        }
+
+        public boolean addIntermediateFrame(byte[] buf, int offset, int length) {
+            if (hasFullBundle())
                 return false;
 
-            bundle_.add(frame);
+            AudioBundle bundle = leaseBundleIfNeeded();
+            bundle.appendCopy(buf, offset, length);
+            bundle.addDurationUs(frameDurationUs(buf, offset, length));
             current_bundle_size_++;
 
             return true;
         }
 
-        public byte[] addFinalFrameAndGetLastBundle(byte[] frame) {
-            bundle_.add(frame);
+        public boolean addIntermediateFrame(ByteBuffer frame) {
+            if (hasFullBundle())
+                return false;
+
+            int length = Math.min(frame.remaining(), AdtsHeader.HEADER_LENGTH_NO_CRC);
+            frame.duplicate().get(headerBytes_, 0, length);
+            AudioBundle bundle = leaseBundleIfNeeded();
+            bundle.appendCopy(frame);
+            bundle.addDurationUs(frameDurationUs(headerBytes_, 0, length));
             current_bundle_size_++;
-            return getCurrentBundle();
+
+            return true;
         }
 
         public boolean hasFullBundle() {
-            return (current_bundle_size_ == MAX_BUNDLE_SIZE);
+            return bundle_ != null && bundle_.getDurationUs() >= sizer_.getBundleDurationMs() * 1000;
         }
 
-        public byte[] getCurrentBundle() {
-            int bundleLength = 0;
-            for (byte[] frame : bundle_) {
-                bundleLength += frame.length;
-            }
-            Log.d(TAG, "Length of audio bundle: " + bundleLength);
-            byte[] byte_array_bundle = new byte[bundleLength];
-            int current_index = 0;
-            for (byte[] frame : bundle_) {
-                System.arraycopy(frame, 0, byte_array_bundle, current_index, frame.length);
-                current_index += frame.length;
+        public AudioBundle getCurrentBundle() {
+            AudioBundle audio_bundle = leaseBundleIfNeeded();
+            if (Helpers.isVerboseLogging()) {
+                Log.d(TAG, "Length of audio bundle: " + audio_bundle.getLength());
             }
 
-            bundle_.clear();
+            audio_bundle.setStreamPositionUs(streamPositionUs_);
+            streamPositionUs_ += audio_bundle.getDurationUs();
+            bundle_ = null;
             current_bundle_size_ = 0;
 
-            return byte_array_bundle;
+            return audio_bundle;
+        }
+
+        private AudioBundle leaseBundleIfNeeded() {
+            if (bundle_ == null) {
+                long bundleDurationUs = sizer_.getBundleDurationMs() * 1000;
+                bundle_ = bundlePool_.acquire((int) ((bundleDurationUs + frameDurationUs_ - 1) / frameDurationUs_));
+            }
+            return bundle_;
+        }
+
+        // the duration in the frame's ADTS header, or that of the last frame that had a valid one
+        private long frameDurationUs(byte[] buf, int offset, int length) {
+            if (length >= AdtsHeader.HEADER_LENGTH_NO_CRC && header_.wrap(buf, offset).isValid()) {
+                frameDurationUs_ = header_.getDurationUs();
+            }
+            return frameDurationUs_;
         }
 
     }
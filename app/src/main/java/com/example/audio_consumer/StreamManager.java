@@ -0,0 +1,286 @@
+package com.example.audio_consumer;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hosts many concurrent streams on a small shared executor instead of a thread per
+ * StreamPlayer. Each stream has its own queue and sink; a stream only occupies a pool thread
+ * while it is starting a bundle, i.e. when it has a bundle queued and its sink is free.
+ * Bundle memory queued across all streams is held under a global budget.
+ */
+public class StreamManager {
+
+    private static final String TAG = "StreamManager";
+
+    public static final int DEFAULT_NUM_THREADS = 2;
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    private final ExecutorService executor_;
+    private final ScheduledExecutorService scheduler_;
+    private final long memoryBudgetBytes_;
+    private final AtomicLong bufferedBytes_ = new AtomicLong();
+    private final CopyOnWriteArrayList<ManagedStream> streams_ = new CopyOnWriteArrayList<ManagedStream>();
+
+    public StreamManager() {
+        this(DEFAULT_NUM_THREADS, DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    public StreamManager(int numThreads, long memoryBudgetBytes) {
+        memoryBudgetBytes_ = memoryBudgetBytes;
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor_ = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "StreamManager-" + threadCount.incrementAndGet());
+            }
+        });
+        scheduler_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "StreamManagerTimer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public ManagedStream openStream(AudioSink sink) throws IOException {
+        return openStream(sink, StreamPlayer.DEFAULT_QUEUE_CAPACITY, BundleRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+    }
+
+    /** Opens sink and starts a stream on it; see StreamPlayer for the queue parameters. */
+    public ManagedStream openStream(AudioSink sink, int queueCapacity, BundleRingBuffer.OverflowPolicy policy,
+                                    long maxQueuedMs) throws IOException {
+        ManagedStream stream = new ManagedStream(sink, queueCapacity, policy, maxQueuedMs);
+        sink.open(stream);
+        streams_.add(stream);
+        return stream;
+    }
+
+    public int getNumStreams() { return streams_.size(); }
+
+    /** Bytes of bundle data queued across all streams. */
+    public long getBufferedBytes() { return bufferedBytes_.get(); }
+
+    public long getMemoryBudgetBytes() { return memoryBudgetBytes_; }
+
+    /**
+     * One timer thread for every stream's short periodic work, to hand to the
+     * StreamFrameBundler and JitterBuffer feeding each stream instead of a thread apiece.
+     * Tasks on it should be short: a bundle pushed into a full queue under
+     * OverflowPolicy.BLOCK would hold up every other stream's timers.
+     */
+    public ScheduledExecutorService getScheduler() { return scheduler_; }
+
+    // takes bytes out of the budget in one step, so concurrent producers cannot overshoot it
+    private boolean reserve(long bytes) {
+        while (true) {
+            long buffered = bufferedBytes_.get();
+            if (buffered + bytes > memoryBudgetBytes_) return false;
+            if (bufferedBytes_.compareAndSet(buffered, buffered + bytes)) return true;
+        }
+    }
+
+    /** Closes every stream and stops the executor. */
+    public void shutdown() {
+        for (ManagedStream stream : streams_) {
+            stream.close();
+        }
+        executor_.shutdownNow();
+        scheduler_.shutdownNow();
+    }
+
+    /** One stream hosted by the manager; used like a StreamPlayer that never owns a thread. */
+    public class ManagedStream implements AudioSink.Listener {
+
+        // IDLE: sink free, nothing scheduled. SCHEDULED: playNext() queued on the executor.
+        // PLAYING: the sink has a bundle. Only one playNext() per stream can be in flight.
+        private static final int IDLE = 0;
+        private static final int SCHEDULED = 1;
+        private static final int PLAYING = 2;
+        private static final int CLOSED = 3;
+
+        private final AtomicInteger state_ = new AtomicInteger(IDLE);
+        private final BundleRingBuffer queue_;
+        private final AudioSink sink_;
+        private final StreamPlayerMetrics metrics_ = new StreamPlayerMetrics();
+        // the bundle the sink holds; whoever clears it, the callback or close(), recycles it
+        private final AtomicReference<AudioBundle> playing_ = new AtomicReference<AudioBundle>();
+        private volatile BundleSizer sizer_;
+        private volatile long lastBundleFinishedNanos_ = 0;
+
+        private final Runnable playNext_ = new Runnable() {
+            @Override
+            public void run() {
+                playNext();
+            }
+        };
+
+        ManagedStream(AudioSink sink, int queueCapacity, BundleRingBuffer.OverflowPolicy policy, long maxQueuedMs) {
+            sink_ = sink;
+            queue_ = new BundleRingBuffer(queueCapacity, policy, maxQueuedMs, new BundleRingBuffer.DropListener() {
+                @Override
+                public void onDropped(AudioBundle bundle) {
+                    bufferedBytes_.addAndGet(-bundle.getLength());
+                    metrics_.onBundleDropped();
+                    bundle.recycle();
+                }
+            });
+        }
+
+        /**
+         * Queues a bundle. If it does not fit in the manager's memory budget, this stream's
+         * oldest bundles are dropped to make room, and failing that the bundle itself.
+         * Calls must not overlap: each stream's queue has a single producer.
+         */
+        public void giveAudioBundle(AudioBundle bundle) {
+            if (state_.get() == CLOSED) {
+                bundle.recycle();
+                return;
+            }
+            bundle.setEnqueueTimeNanos(System.nanoTime());
+            long bytes = bundle.getLength();
+            while (!reserve(bytes)) {
+                if (!queue_.dropOldest()) {
+                    metrics_.onBundleDropped();
+                    bundle.recycle();
+                    return;
+                }
+            }
+            try {
+                queue_.offer(bundle);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                bufferedBytes_.addAndGet(-bytes);
+                metrics_.onBundleDropped();
+                bundle.recycle();
+                return;
+            }
+            if (state_.get() == CLOSED) {
+                discardQueued(); // close() may have emptied the queue before this bundle went in
+                return;
+            }
+            scheduleIfIdle();
+        }
+
+        public void setBundleSizer(BundleSizer sizer) {
+            sizer_ = sizer;
+        }
+
+        public StreamPlayerMetrics getMetrics() { return metrics_; }
+
+        public BundleRingBuffer getInputQueue() { return queue_; }
+
+        public void close() {
+            if (state_.getAndSet(CLOSED) == CLOSED) return;
+            streams_.remove(this);
+            sink_.close();
+            AudioBundle playing = playing_.getAndSet(null);
+            if (playing != null) {
+                playing.recycle();
+            }
+            discardQueued();
+        }
+
+        // empties the queue of a closed stream, giving back its bytes. Bundles are taken with
+        // poll(), whose compare-and-set on the head makes it safe alongside a playNext() still
+        // running; a producer that queued a bundle after this ran calls it again.
+        private void discardQueued() {
+            AudioBundle bundle;
+            while ((bundle = queue_.poll()) != null) {
+                bufferedBytes_.addAndGet(-bundle.getLength());
+                metrics_.onBundleDropped();
+                bundle.recycle();
+            }
+        }
+
+        @Override
+        public void onBundleFinished(AudioBundle bundle) {
+            metrics_.onBundlePlayed(bundle);
+            onBundleDone(bundle);
+        }
+
+        @Override
+        public void onBundleFailed(AudioBundle bundle, String reason) {
+            Log.e(TAG, "Error while playing an audio bundle: " + reason);
+            metrics_.onBundleFailed();
+            onBundleDone(bundle);
+        }
+
+        private void onBundleDone(AudioBundle bundle) {
+            lastBundleFinishedNanos_ = System.nanoTime();
+            if (playing_.compareAndSet(bundle, null)) {
+                bundle.recycle();
+            }
+            if (queue_.isEmpty()) {
+                metrics_.onUnderrun();
+            }
+            if (state_.compareAndSet(PLAYING, SCHEDULED)) {
+                executor_.execute(playNext_);
+            }
+        }
+
+        private void scheduleIfIdle() {
+            if (state_.compareAndSet(IDLE, SCHEDULED)) {
+                executor_.execute(playNext_);
+            }
+        }
+
+        private void playNext() {
+            AudioBundle bundle = queue_.poll();
+            if (bundle == null) {
+                if (state_.compareAndSet(SCHEDULED, IDLE) && !queue_.isEmpty()) {
+                    scheduleIfIdle(); // a bundle arrived between poll() and going idle
+                }
+                return;
+            }
+            bufferedBytes_.addAndGet(-bundle.getLength());
+            long startNanos = System.nanoTime();
+            metrics_.queueWait.recordNanos(startNanos - bundle.getEnqueueTimeNanos());
+
+            playing_.set(bundle); // before PLAYING, so a close() from then on finds it
+            if (!state_.compareAndSet(SCHEDULED, PLAYING)) { // closed meanwhile
+                if (playing_.compareAndSet(bundle, null)) {
+                    bundle.recycle();
+                }
+                return;
+            }
+            try {
+                sink_.play(bundle);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start an audio bundle", e);
+                metrics_.onBundleFailed();
+                if (playing_.compareAndSet(bundle, null)) {
+                    bundle.recycle();
+                }
+                if (state_.compareAndSet(PLAYING, SCHEDULED)) {
+                    executor_.execute(playNext_);
+                }
+                return;
+            }
+
+            long startedNanos = System.nanoTime();
+            metrics_.prepare.recordNanos(startedNanos - startNanos);
+            if (lastBundleFinishedNanos_ != 0 && startNanos > lastBundleFinishedNanos_) {
+                metrics_.interBundleGap.recordNanos(startedNanos - lastBundleFinishedNanos_);
+            }
+            BundleSizer sizer = sizer_;
+            if (sizer != null) {
+                long starvedNanos = lastBundleFinishedNanos_ == 0 ? 0 : Math.max(0, startNanos - lastBundleFinishedNanos_);
+                sizer.onBundleStarted((startedNanos - startNanos) / 1000000, starvedNanos / 1000000);
+            }
+        }
+
+    }
+
+}
@@ -1,35 +1,110 @@
 package com.example.audio_consumer;
 
-import android.media.MediaPlayer;
 import android.util.Log;
 
-import java.util.concurrent.LinkedTransferQueue;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StreamPlayer implements Runnable {
 
     private static final String TAG = "StreamPlayer";
 
-    private LinkedTransferQueue<byte[]> input_queue;
-    private MediaPlayer player_;
-    boolean currentlyPlaying_ = false;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    // values of seekRequestUs_ other than a stream position
+    private static final long NO_SEEK = Long.MIN_VALUE;
+    private static final long SEEK_LIVE = -1;
+
+    private BundleRingBuffer input_queue;
+    private AudioSink sink_;
+
+    // released by the sink's finished / failed callbacks, acquired by the player thread
+    private final Semaphore bundleFinished_ = new Semaphore(0);
+    private volatile boolean bundleFailed_ = false; // written before bundleFinished_ is released
+    private boolean abandoned_ = false; // the player stopped waiting for the sink; guarded by bundleFinished_
+    private volatile boolean running_ = false;
+
+    private long lastBundleFinishedNanos_ = 0; // only touched by the player thread
+    private long sinkHeldNanos_ = 0;           // audio the sink had not rendered then, -1 if unknown; ditto
+    private volatile long lastInterBundleGapMs_ = -1;
+
+    private volatile BundleSizer sizer_;
+    private volatile PlayoutClock clock_;
+    private final StreamPlayerMetrics metrics_ = new StreamPlayerMetrics();
+
+    private volatile TimeShiftCache cache_;
+    private final AtomicLong seekRequestUs_ = new AtomicLong(NO_SEEK);
+    private long replayPositionUs_ = -1;          // -1 while playing live; only touched by the player thread
+    private volatile long liveEndUs_ = 0;         // stream position just past the last live bundle played
+    private volatile boolean replaying_ = false;
 
     private Thread t_;
+    private boolean stopped_ = false;
 
     public StreamPlayer() {
-        input_queue = new LinkedTransferQueue<byte[]>();
-        player_ = new MediaPlayer();
+        this(new StreamingMediaPlayerAudioSink());
     }
 
+    public StreamPlayer(AudioSink sink) {
+        this(sink, DEFAULT_QUEUE_CAPACITY, BundleRingBuffer.OverflowPolicy.BLOCK, 0);
+    }
+
+    /**
+     * @param queueCapacity  most bundles that may wait to be played
+     * @param policy         what giveAudioBundle() does when the queue is full
+     * @param maxQueuedMs    latency target for OverflowPolicy.SKIP_TO_LIVE
+     */
+    public StreamPlayer(AudioSink sink, int queueCapacity, BundleRingBuffer.OverflowPolicy policy,
+                        long maxQueuedMs) {
+        input_queue = new BundleRingBuffer(queueCapacity, policy, maxQueuedMs,
+                new BundleRingBuffer.DropListener() {
+                    @Override
+                    public void onDropped(AudioBundle bundle) {
+                        metrics_.onBundleDropped();
+                        bundle.recycle();
+                    }
+                });
+        sink_ = sink;
+    }
+
+    /**
+     * Opens the sink and starts the player thread.
+     *
+     * @throws IllegalStateException after stop(): a stopped player has closed its sink and
+     *                               cannot be restarted
+     */
     public void start() {
+        if (stopped_) {
+            throw new IllegalStateException("StreamPlayer cannot be restarted after stop()");
+        }
         if (t_ == null) {
+            try {
+                sink_.open(new AudioSink.Listener() {
+                    @Override
+                    public void onBundleFinished(AudioBundle bundle) {
+                        onSinkDone(bundle, false);
+                    }
+
+                    @Override
+                    public void onBundleFailed(AudioBundle bundle, String reason) {
+                        Log.e(TAG, "Error while playing an audio bundle: " + reason);
+                        onSinkDone(bundle, true);
+                    }
+                });
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open audio sink", e);
+                return;
+            }
+            running_ = true;
             t_ = new Thread(this);
             t_.start();
         }
     }
 
     public void stop() {
-        player_.release();
-        player_ = null;
+        stopped_ = true;
+        running_ = false;
         if (t_ != null) {
             t_.interrupt();
             try {
@@ -37,43 +112,311 @@ public class StreamPlayer implements Runnable {
             } catch (InterruptedException e) {}
             t_ = null;
         }
+        if (sink_ != null) {
+            sink_.close();
+            sink_ = null;
+        }
+    }
+
+    /**
+     * Queues a bundle for playback, subject to the queue's overflow policy; during a replay
+     * it goes into the time-shift cache instead. Calls must not overlap: the queue has a
+     * single producer.
+     */
+    public void giveAudioBundle(AudioBundle bundle) {
+        bundle.setEnqueueTimeNanos(System.nanoTime());
+        PlayoutClock clock = clock_;
+        if (clock != null) {
+            clock.onBundleReceived(bundle.getStreamPositionUs(), bundle.getDurationUs(), bundle.getEnqueueTimeNanos());
+        }
+        TimeShiftCache cache = cache_;
+        if (replaying_ && cache != null) {
+            // nothing takes from the queue during a replay, so record the live stream instead
+            liveEndUs_ = bundle.getStreamPositionUs() + bundle.getDurationUs();
+            cache.put(bundle);
+            return;
+        }
+        try {
+            input_queue.offer(bundle);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics_.onBundleDropped();
+            bundle.recycle();
+        }
+    }
+
+    /** Live counters and histograms; poll snapshot() on it to export them. */
+    public StreamPlayerMetrics getMetrics() {
+        return metrics_;
+    }
+
+    /** The input queue, for its occupancy, queued duration and drop counts. */
+    public BundleRingBuffer getInputQueue() {
+        return input_queue;
+    }
+
+    /** Number of bundles waiting to be played. */
+    public int getQueueDepth() {
+        return input_queue.size();
+    }
+
+    /** Reports sink setup time and player starvation to sizer so bundle sizes can adapt. */
+    public void setBundleSizer(BundleSizer sizer) {
+        sizer_ = sizer;
+    }
+
+    /**
+     * Plays live bundles against clock: when playback has drifted more than the clock allows
+     * behind the bundles' presentation times, queued bundles and then leading frames are
+     * skipped to catch up, so latency stays constant however long the stream runs. With a
+     * sink implementing AudioSink.RenderedPosition the clock follows the audible position;
+     * with any other sink it follows play() calls.
+     */
+    public void setPlayoutClock(PlayoutClock clock) {
+        clock_ = clock;
+    }
+
+    /** How far playback is behind the live edge, or -1 without a playout clock or before playback. */
+    public long getOffsetFromLiveMs() {
+        PlayoutClock clock = clock_;
+        long offsetUs = clock == null ? -1 : clock.getOffsetFromLiveUs();
+        return offsetUs < 0 ? -1 : offsetUs / 1000;
+    }
+
+    /**
+     * Keeps every live bundle played in cache, so playback can be moved back with seekTo()
+     * or seekBackMs(). Requires bundles stamped with their stream position, as
+     * StreamFrameBundler does.
+     */
+    public void setTimeShiftCache(TimeShiftCache cache) {
+        cache_ = cache;
+    }
+
+    /**
+     * Replays the stream from positionUs, as far as it is cached, then carries on with the
+     * live queue. Playback moves at the next bundle boundary, to the start of the cached
+     * bundle covering positionUs. Live bundles that arrive during the replay are cached
+     * instead of queued, so the replay runs on through them until resumeLive().
+     */
+    public void seekTo(long positionUs) {
+        seekRequestUs_.set(Math.max(0, positionUs));
+        input_queue.wakeConsumer(); // the player may be waiting for live audio
+    }
+
+    /** Replays from ms milliseconds behind the end of the last live bundle played. */
+    public void seekBackMs(long ms) {
+        seekTo(liveEndUs_ - ms * 1000);
+    }
+
+    /** Stops a replay at the next bundle boundary and goes back to the live queue. */
+    public void resumeLive() {
+        seekRequestUs_.set(SEEK_LIVE);
+        input_queue.wakeConsumer();
+    }
+
+    /** Whether the bundle playing now comes from the time-shift cache. */
+    public boolean isReplaying() {
+        return replaying_;
     }
 
-    public void giveAudioBundle(byte[] bundle) {
-        input_queue.add(bundle);
+    /**
+     * Time in milliseconds the sink was out of audio before the most recent bundle started,
+     * or -1 if fewer than two bundles have been played.
+     */
+    public long getLastInterBundleGapMs() {
+        return lastInterBundleGapMs_;
     }
 
     @Override
     public void run() {
 
-        byte[] currentBundle;
+        AudioBundle currentBundle;
 
-        while (!Thread.interrupted()) {
+        while (running_) {
 
-            if (input_queue.size() != 0) {
-                currentBundle = input_queue.poll();
+            boolean live;
+            long starvedNanos = 0;
+            try {
+                currentBundle = nextReplayBundle();
+                live = currentBundle == null;
+                if (!live) {
+                    cacheQueuedLive();
+                }
+                else {
+                    currentBundle = input_queue.take();
+                    if (currentBundle == null) continue; // woken by a seek
+                    long dequeuedNanos = System.nanoTime();
+                    metrics_.queueWait.recordNanos(dequeuedNanos - currentBundle.getEnqueueTimeNanos());
+                    starvedNanos = dryNanos(currentBundle.getEnqueueTimeNanos());
+                    if (starvedNanos > 0) {
+                        metrics_.onUnderrun();
+                    }
+                }
+            } catch (InterruptedException e) { break; }
+            replaying_ = !live;
+            PlayoutClock clock = clock_;
+            long unrenderedUs = unrenderedUs();
+            boolean clocked = live && clock != null && unrenderedUs >= 0;
+            if (clocked) {
+                currentBundle = catchUp(clock, currentBundle, unrenderedUs);
             }
-            else { continue; }
 
-            AACADTSAudioBundleSource source = new AACADTSAudioBundleSource(currentBundle);
-            player_.setDataSource(source);
+            bundleFinished_.drainPermits();
+            long prepareStartNanos = System.nanoTime();
             try {
-                player_.prepare();
-            } catch (Exception e) { e.printStackTrace(); continue; }
-            player_.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-                @Override
-                public void onCompletion(MediaPlayer mediaPlayer) {
-                    Log.d(TAG, "Finished playing an audio bundle.");
-                    player_.reset();
-                    currentlyPlaying_ = false;
+                sink_.play(currentBundle);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start an audio bundle", e);
+                metrics_.onBundleFailed();
+                currentBundle.recycle();
+                continue;
+            }
+
+            long startedNanos = System.nanoTime();
+            long prepareMs = (startedNanos - prepareStartNanos) / 1000000;
+            metrics_.prepare.recordNanos(startedNanos - prepareStartNanos);
+            if (clocked) {
+                // the bundle is heard once the audio the sink held before it has been rendered
+                unrenderedUs = unrenderedUs();
+                long audibleNanos = startedNanos + Math.max(0, unrenderedUs - currentBundle.getDurationUs()) * 1000;
+                clock.onBundleStarted(currentBundle.getStreamPositionUs(), currentBundle.getDurationUs(), audibleNanos);
+            }
+            if (sizer_ != null) {
+                sizer_.onBundleStarted(prepareMs, starvedNanos / 1000000);
+            }
+            if (lastBundleFinishedNanos_ != 0 && sinkHeldNanos_ >= 0) {
+                long gapNanos = dryNanos(startedNanos);
+                metrics_.interBundleGap.recordNanos(gapNanos);
+                lastInterBundleGapMs_ = gapNanos / 1000000;
+                if (Helpers.isVerboseLogging()) {
+                    Log.d(TAG, "Gap between audio bundles (ms): " + lastInterBundleGapMs_);
                 }
-            });
-            player_.start();
-            currentlyPlaying_ = true;
-            while (currentlyPlaying_) { }
-            Log.d(TAG, "Got to end of while loop iteration.");
+            }
+
+            try {
+                bundleFinished_.acquire();
+            } catch (InterruptedException e) {
+                abandon(currentBundle);
+                break;
+            }
+            lastBundleFinishedNanos_ = System.nanoTime();
+            unrenderedUs = unrenderedUs();
+            sinkHeldNanos_ = unrenderedUs < 0 ? -1 : unrenderedUs * 1000;
+            if (bundleFailed_) {
+                metrics_.onBundleFailed();
+            } else {
+                metrics_.onBundlePlayed(currentBundle);
+            }
+
+            TimeShiftCache cache = cache_;
+            if (live && !bundleFailed_) {
+                liveEndUs_ = currentBundle.getStreamPositionUs() + currentBundle.getDurationUs();
+                if (cache != null) {
+                    cache.put(currentBundle); // the cache owns it now
+                    continue;
+                }
+            }
+            currentBundle.recycle();
         }
+        replaying_ = false;
+
+    }
+
+    // how long the sink had been out of audio at nanos. A sink that buffers ahead finishes a
+    // bundle well before it is heard, and only runs dry once what it still held has played
+    // out; 0 before the first bundle has finished or while the sink does not know its position
+    private long dryNanos(long nanos) {
+        if (lastBundleFinishedNanos_ == 0 || sinkHeldNanos_ < 0) return 0;
+        return Math.max(0, nanos - lastBundleFinishedNanos_ - sinkHeldNanos_);
+    }
+
+    // audio handed to the sink but not heard yet: 0 for sinks that play a bundle as it is handed
+    // over, -1 while a sink reporting its rendered position does not know it, e.g. before playback
+    private long unrenderedUs() {
+        AudioSink sink = sink_;
+        return sink instanceof AudioSink.RenderedPosition ? ((AudioSink.RenderedPosition) sink).getUnrenderedUs() : 0;
+    }
 
+    // sink callback: hands the bundle back to the player thread, or to the pool once the player has stopped
+    private void onSinkDone(AudioBundle bundle, boolean failed) {
+        synchronized (bundleFinished_) {
+            if (abandoned_) {
+                bundle.recycle();
+                return;
+            }
+            bundleFailed_ = failed;
+            bundleFinished_.release();
+        }
+    }
+
+    // stop() interrupted the wait for the sink: the bundle is recycled once the sink is done with it
+    private void abandon(AudioBundle bundle) {
+        synchronized (bundleFinished_) {
+            if (bundleFinished_.tryAcquire()) {
+                bundle.recycle();
+            } else {
+                abandoned_ = true;
+            }
+        }
+    }
+
+    // skips what playback has fallen behind on: whole queued bundles first, then leading frames
+    private AudioBundle catchUp(PlayoutClock clock, AudioBundle bundle, long unrenderedUs) {
+        long now = System.nanoTime() + unrenderedUs * 1000; // when a bundle handed over now is heard
+        long lateUs = clock.correctionUs(bundle.getStreamPositionUs(), bundle.getEnqueueTimeNanos(), now);
+        while (lateUs >= bundle.getDurationUs() && lateUs > 0) {
+            AudioBundle next = input_queue.poll();
+            if (next == null) break;
+            metrics_.onBundleDropped();
+            clock.onBundleSkipped();
+            bundle.recycle();
+            bundle = next;
+            lateUs = clock.correctionUs(bundle.getStreamPositionUs(), bundle.getEnqueueTimeNanos(), now);
+        }
+        if (lateUs > 0 && bundle.getNumSegments() > 1 && bundle.getDurationUs() > 0) {
+            long frameDurationUs = bundle.getDurationUs() / bundle.getNumSegments();
+            int frames = (int) Math.min(bundle.getNumSegments() - 1, lateUs / frameDurationUs);
+            if (frames > 0) {
+                bundle.trimFront(frames);
+                clock.onFramesSkipped(frames);
+                if (Helpers.isVerboseLogging()) {
+                    Log.d(TAG, "Skipped " + frames + " frames to catch up " + lateUs / 1000 + " ms of drift");
+                }
+            }
+        }
+        return bundle;
+    }
+
+    // bundles queued before a replay started go into the cache with the ones giveAudioBundle()
+    // caches during it, so resumeLive() picks up at the live edge
+    private void cacheQueuedLive() {
+        TimeShiftCache cache = cache_;
+        AudioBundle bundle;
+        while ((bundle = input_queue.poll()) != null) {
+            liveEndUs_ = bundle.getStreamPositionUs() + bundle.getDurationUs();
+            cache.put(bundle);
+        }
+    }
+
+    // the next bundle of a replay in progress, or null to play from the live queue
+    private AudioBundle nextReplayBundle() {
+        long seek = seekRequestUs_.getAndSet(NO_SEEK);
+        if (seek != NO_SEEK) {
+            replayPositionUs_ = seek;
+        }
+        TimeShiftCache cache = cache_;
+        if (replayPositionUs_ < 0 || cache == null) {
+            replayPositionUs_ = -1;
+            return null;
+        }
+        AudioBundle bundle = cache.copyAt(replayPositionUs_);
+        if (bundle == null || bundle.getDurationUs() <= 0) { // caught up with live, or not cached
+            if (bundle != null) bundle.recycle();
+            replayPositionUs_ = -1;
+            return null;
+        }
+        replayPositionUs_ = bundle.getStreamPositionUs() + bundle.getDurationUs();
+        return bundle;
     }
 
 }
@@ -0,0 +1,78 @@
+package com.example.audio_consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for one StreamPlayer. Everything is updated with atomics
+ * from the player thread and can be read from any thread through snapshot().
+ */
+public class StreamPlayerMetrics {
+
+    /** Time a bundle spent in the input queue before the player took it. */
+    public final LatencyHistogram queueWait = new LatencyHistogram();
+    /** Time the sink took to start a bundle, i.e. MediaPlayer prepare() for the default sink. */
+    public final LatencyHistogram prepare = new LatencyHistogram();
+    /** Time the sink was out of audio before a bundle started: the silence between bundles. */
+    public final LatencyHistogram interBundleGap = new LatencyHistogram();
+
+    private final AtomicLong bundlesPlayed_ = new AtomicLong();
+    private final AtomicLong bytesPlayed_ = new AtomicLong();
+    private final AtomicLong framesPlayed_ = new AtomicLong();
+    private final AtomicLong underruns_ = new AtomicLong();
+    private final AtomicLong bundlesFailed_ = new AtomicLong();
+    private final AtomicLong bundlesDropped_ = new AtomicLong();
+
+    void onBundlePlayed(AudioBundle bundle) {
+        bundlesPlayed_.incrementAndGet();
+        bytesPlayed_.addAndGet(bundle.getLength());
+        framesPlayed_.addAndGet(bundle.getNumSegments());
+    }
+
+    /** The sink ran out of audio before the next bundle arrived, so playback stopped. */
+    void onUnderrun() { underruns_.incrementAndGet(); }
+
+    void onBundleFailed() { bundlesFailed_.incrementAndGet(); }
+
+    /** A bundle was thrown away before it reached the sink. */
+    void onBundleDropped() { bundlesDropped_.incrementAndGet(); }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public static class Snapshot {
+
+        public final long bundlesPlayed;
+        public final long bytesPlayed;
+        public final long framesPlayed;
+        public final long underruns;
+        public final long bundlesFailed;
+        public final long bundlesDropped;
+        public final LatencyHistogram.Snapshot queueWait;
+        public final LatencyHistogram.Snapshot prepare;
+        public final LatencyHistogram.Snapshot interBundleGap;
+
+        Snapshot(StreamPlayerMetrics metrics) {
+            bundlesPlayed = metrics.bundlesPlayed_.get();
+            bytesPlayed = metrics.bytesPlayed_.get();
+            framesPlayed = metrics.framesPlayed_.get();
+            underruns = metrics.underruns_.get();
+            bundlesFailed = metrics.bundlesFailed_.get();
+            bundlesDropped = metrics.bundlesDropped_.get();
+            queueWait = metrics.queueWait.snapshot();
+            prepare = metrics.prepare.snapshot();
+            interBundleGap = metrics.interBundleGap.snapshot();
+        }
+
+        @Override
+        public String toString() {
+            return "bundles=" + bundlesPlayed + " frames=" + framesPlayed + " bytes=" + bytesPlayed +
+                    " underruns=" + underruns + " failed=" + bundlesFailed + " dropped=" + bundlesDropped + "\n" +
+                    "queue wait: " + queueWait + "\n" +
+                    "prepare: " + prepare + "\n" +
+                    "gap: " + interBundleGap;
+        }
+
+    }
+
+}
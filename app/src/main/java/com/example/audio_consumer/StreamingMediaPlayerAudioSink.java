@@ -0,0 +1,149 @@
+package com.example.audio_consumer;
+
+import android.media.MediaPlayer;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Plays all bundles through one MediaPlayer reading one continuous AACADTSStreamSource, so
+ * setDataSource() / prepare() happen once per stream rather than once per bundle. play()
+ * appends the bundle to the stream, and the bundle is reported finished once MediaPlayer has
+ * read all of it, while the player keeps playing the audio it buffered before.
+ *
+ * After a MediaPlayer error the bundles not yet read are failed, and the next play() starts
+ * a new stream.
+ */
+public class StreamingMediaPlayerAudioSink implements AudioSink, AudioSink.RenderedPosition {
+
+    private static final String TAG = "StreamingMediaPlayerAudioSink";
+
+    private final long readTimeoutMs_;
+
+    private MediaPlayer player_;
+    private Listener listener_;
+    private AACADTSStreamSource source_; // null until the first play() of a stream
+    private long appendedUs_;            // audio appended to the current stream
+    private boolean started_ = false;    // whether MediaPlayer is playing the current stream
+
+    public StreamingMediaPlayerAudioSink() {
+        this(AACADTSStreamSource.DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    /**
+     * @param readTimeoutMs  how long MediaPlayer may wait for the next bundle before the
+     *                       stream fails
+     */
+    public StreamingMediaPlayerAudioSink(long readTimeoutMs) {
+        readTimeoutMs_ = readTimeoutMs;
+    }
+
+    @Override
+    public void open(Listener listener) {
+        listener_ = listener;
+        player_ = new MediaPlayer();
+        player_.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mediaPlayer) {
+                if (Helpers.isVerboseLogging()) Log.d(TAG, "Prepared the audio stream.");
+                mediaPlayer.start();
+                synchronized (StreamingMediaPlayerAudioSink.this) {
+                    started_ = true;
+                }
+            }
+        });
+        player_.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer mediaPlayer) {
+                endStream("MediaPlayer reached the end of the stream");
+            }
+        });
+        player_.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+                endStream("MediaPlayer error (what: " + what + ", extra: " + extra + ")");
+                return true; // suppresses the completion callback
+            }
+        });
+    }
+
+    @Override
+    public synchronized void play(AudioBundle bundle) throws IOException {
+        if (source_ != null) {
+            source_.append(bundle);
+            appendedUs_ += bundle.getDurationUs();
+            return;
+        }
+        AACADTSStreamSource source = new AACADTSStreamSource(readTimeoutMs_,
+                new AACADTSStreamSource.ConsumptionListener() {
+                    @Override
+                    public void onBundleConsumed(AudioBundle consumed) {
+                        if (Helpers.isVerboseLogging()) Log.d(TAG, "Audio bundle read by MediaPlayer.");
+                        listener_.onBundleFinished(consumed);
+                    }
+                });
+        try {
+            player_.setDataSource(source);
+            source.append(bundle);
+            player_.prepareAsync();
+        } catch (IOException e) {
+            source.takeUnconsumed(); // no callbacks for a bundle play() failed on
+            player_.reset();
+            throw e;
+        } catch (RuntimeException e) {
+            source.takeUnconsumed();
+            player_.reset();
+            throw new IOException(e.getMessage());
+        }
+        source_ = source;
+        appendedUs_ = bundle.getDurationUs();
+        started_ = false;
+    }
+
+    /** Audio appended to the stream that MediaPlayer has not played yet; -1 until the stream has started. */
+    @Override
+    public synchronized long getUnrenderedUs() {
+        if (source_ == null || !started_) return -1;
+        return Math.max(0, appendedUs_ - player_.getCurrentPosition() * 1000L);
+    }
+
+    @Override
+    public void close() {
+        AACADTSStreamSource source;
+        synchronized (this) {
+            source = source_;
+            source_ = null;
+            if (source != null) {
+                source.close();
+            }
+            if (player_ != null) {
+                player_.release();
+                player_ = null;
+            }
+        }
+        if (source == null) return;
+        for (AudioBundle bundle : source.takeUnconsumed()) {
+            listener_.onBundleFailed(bundle, "sink closed");
+        }
+    }
+
+    private void endStream(String reason) {
+        AACADTSStreamSource source;
+        synchronized (this) {
+            source = source_;
+            source_ = null;
+            started_ = false;
+            if (source != null) {
+                source.close(); // wakes a read waiting for data, which reset() waits for
+            }
+            if (player_ != null) {
+                player_.reset();
+            }
+        }
+        if (source == null) return;
+        for (AudioBundle bundle : source.takeUnconsumed()) {
+            listener_.onBundleFailed(bundle, reason);
+        }
+    }
+
+}
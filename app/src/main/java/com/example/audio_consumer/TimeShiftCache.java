@@ -0,0 +1,231 @@
+package com.example.audio_consumer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps recently played bundles, keyed by stream position, so the player can seek back and
+ * replay them without fetching or bundling the audio again. Bundles handed to put() are owned
+ * by the cache. Memory use is bounded: past the budget the least recently used bundles are
+ * evicted, or spilled to a local file if one was given, which is itself used as a circular
+ * buffer of bounded size.
+ */
+public class TimeShiftCache {
+
+    private static final String TAG = "TimeShiftCache";
+
+    private static class Entry {
+        final long positionUs;
+        final long durationUs;
+        AudioBundle bundle;     // null once spilled
+        long spillOffset = -1;  // position in the spill file, -1 if not spilled
+        int length;
+        int[] frameLengths;     // frame boundaries of a spilled bundle
+
+        Entry(long positionUs, long durationUs) {
+            this.positionUs = positionUs;
+            this.durationUs = durationUs;
+        }
+    }
+
+    private final AudioBundlePool pool_;
+    private final long memoryBudgetBytes_;
+    private final RandomAccessFile spill_;
+    private final long spillBudgetBytes_;
+
+    private final TreeMap<Long, Entry> byPosition_ = new TreeMap<Long, Entry>();
+    private final LinkedHashMap<Long, Entry> inMemoryLru_ = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+    private long memoryBytes_ = 0;
+    private long spillWritePosition_ = 0;
+
+    private long hits_ = 0;
+    private long misses_ = 0;
+    private long evictions_ = 0;
+    private long spills_ = 0;
+
+    public TimeShiftCache(AudioBundlePool pool, long memoryBudgetBytes) throws IOException {
+        this(pool, memoryBudgetBytes, null, 0);
+    }
+
+    /**
+     * @param spillFile          where evicted bundles go, or null to drop them
+     * @param spillBudgetBytes   size the spill file is allowed to reach
+     */
+    public TimeShiftCache(AudioBundlePool pool, long memoryBudgetBytes, File spillFile, long spillBudgetBytes)
+            throws IOException {
+        pool_ = pool;
+        memoryBudgetBytes_ = memoryBudgetBytes;
+        spill_ = spillFile == null ? null : new RandomAccessFile(spillFile, "rw");
+        spillBudgetBytes_ = spillBudgetBytes;
+        if (spill_ != null) {
+            spill_.setLength(0);
+        }
+    }
+
+    /** Takes ownership of a live bundle, played or skipped over by a replay. */
+    public synchronized void put(AudioBundle bundle) {
+        Entry old = byPosition_.remove(bundle.getStreamPositionUs());
+        if (old != null) {
+            removeEntry(old);
+        }
+        Entry entry = new Entry(bundle.getStreamPositionUs(), bundle.getDurationUs());
+        entry.bundle = bundle;
+        entry.length = bundle.getLength();
+        byPosition_.put(entry.positionUs, entry);
+        inMemoryLru_.put(entry.positionUs, entry);
+        memoryBytes_ += entry.length;
+
+        Iterator<Map.Entry<Long, Entry>> lru = inMemoryLru_.entrySet().iterator();
+        while (memoryBytes_ > memoryBudgetBytes_ && lru.hasNext()) {
+            Entry victim = lru.next().getValue();
+            lru.remove();
+            memoryBytes_ -= victim.length;
+            if (!spill(victim)) {
+                byPosition_.remove(victim.positionUs);
+                evictions_++;
+            }
+            victim.bundle.recycle();
+            victim.bundle = null;
+        }
+    }
+
+    /**
+     * Returns a copy, leased from the pool, of the cached bundle covering positionUs, or null
+     * if that part of the stream is not cached. The caller owns the copy.
+     */
+    public synchronized AudioBundle copyAt(long positionUs) {
+        Map.Entry<Long, Entry> floor = byPosition_.floorEntry(positionUs);
+        if (floor == null || positionUs >= floor.getValue().positionUs + floor.getValue().durationUs) {
+            misses_++;
+            return null;
+        }
+        Entry entry = floor.getValue();
+        AudioBundle copy;
+        if (entry.bundle != null) {
+            inMemoryLru_.get(entry.positionUs); // touch
+            copy = pool_.acquire(entry.bundle.getNumSegments());
+            copy.appendCopy(entry.bundle);
+        }
+        else {
+            copy = readSpilled(entry);
+            if (copy == null) {
+                misses_++;
+                return null;
+            }
+        }
+        copy.setStreamPositionUs(entry.positionUs);
+        hits_++;
+        return copy;
+    }
+
+    /** Stream position of the oldest cached audio, or -1 if the cache is empty. */
+    public synchronized long getOldestPositionUs() {
+        return byPosition_.isEmpty() ? -1 : byPosition_.firstKey();
+    }
+
+    /** Stream position just past the newest cached audio, or -1 if the cache is empty. */
+    public synchronized long getNewestEndUs() {
+        if (byPosition_.isEmpty()) return -1;
+        Entry last = byPosition_.lastEntry().getValue();
+        return last.positionUs + last.durationUs;
+    }
+
+    public synchronized long getMemoryBytes() { return memoryBytes_; }
+
+    public synchronized long getHits() { return hits_; }
+
+    public synchronized long getMisses() { return misses_; }
+
+    /** Bundles dropped from the cache altogether. */
+    public synchronized long getEvictions() { return evictions_; }
+
+    public synchronized long getSpills() { return spills_; }
+
+    public synchronized void close() {
+        for (Entry entry : byPosition_.values()) {
+            if (entry.bundle != null) {
+                entry.bundle.recycle();
+                entry.bundle = null;
+            }
+        }
+        byPosition_.clear();
+        inMemoryLru_.clear();
+        memoryBytes_ = 0;
+        if (spill_ != null) {
+            try {
+                spill_.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        if (entry.bundle != null) {
+            inMemoryLru_.remove(entry.positionUs);
+            memoryBytes_ -= entry.length;
+            entry.bundle.recycle();
+            entry.bundle = null;
+        }
+    }
+
+    // writes the entry to the circular spill file; false if spilling is off or failed
+    private boolean spill(Entry entry) {
+        if (spill_ == null || entry.length > spillBudgetBytes_) return false;
+        if (spillWritePosition_ + entry.length > spillBudgetBytes_) {
+            spillWritePosition_ = 0;
+        }
+        long start = spillWritePosition_;
+        long end = start + entry.length;
+        // forget spilled entries this write is about to overwrite
+        Iterator<Entry> entries = byPosition_.values().iterator();
+        while (entries.hasNext()) {
+            Entry other = entries.next();
+            if (other.spillOffset >= 0 && other.spillOffset < end && other.spillOffset + other.length > start) {
+                entries.remove();
+                evictions_++;
+            }
+        }
+        try {
+            byte[] bytes = entry.bundle.toByteArray();
+            spill_.seek(start);
+            spill_.write(bytes);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to spill a bundle", e);
+            return false;
+        }
+        entry.frameLengths = new int[entry.bundle.getNumSegments()];
+        for (int i = 0; i < entry.frameLengths.length; i++) {
+            entry.frameLengths[i] = entry.bundle.getSegmentLength(i);
+        }
+        entry.spillOffset = start;
+        spillWritePosition_ = end;
+        spills_++;
+        return true;
+    }
+
+    private AudioBundle readSpilled(Entry entry) {
+        byte[] bytes = new byte[entry.length];
+        try {
+            spill_.seek(entry.spillOffset);
+            spill_.readFully(bytes);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read a spilled bundle", e);
+            return null;
+        }
+        AudioBundle copy = pool_.acquire(entry.frameLengths.length);
+        int offset = 0;
+        for (int frameLength : entry.frameLengths) {
+            copy.appendCopy(bytes, offset, frameLength);
+            offset += frameLength;
+        }
+        copy.addDurationUs(entry.durationUs);
+        return copy;
+    }
+
+}
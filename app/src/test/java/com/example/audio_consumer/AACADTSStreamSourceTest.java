@@ -0,0 +1,116 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AACADTSStreamSourceTest {
+
+    private static AudioBundle bundle(int length, int value) {
+        AudioBundle bundle = new AudioBundle(1);
+        byte[] frame = new byte[length];
+        Arrays.fill(frame, (byte) value);
+        bundle.addSegment(frame);
+        return bundle;
+    }
+
+    @Test
+    public void readWaitsForAppendedData() throws Exception {
+        final AACADTSStreamSource source = new AACADTSStreamSource(5000, null);
+        source.append(bundle(10, 1));
+        assertEquals(-1, source.getSize());
+
+        Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    source.append(bundle(10, 2));
+                } catch (Exception e) {}
+            }
+        });
+        appender.start();
+        byte[] buf = new byte[32];
+        assertEquals(10, source.readAt(0, buf, 0, 32));  // a read that fits returns what is there
+        assertEquals(10, source.readAt(10, buf, 10, 22)); // blocks until the second bundle
+        assertEquals(2, buf[19]);
+        appender.join();
+
+        source.endOfStream();
+        assertEquals(-1, source.readAt(20, buf, 0, 1));
+    }
+
+    @Test
+    public void readTimesOutWithoutData() throws Exception {
+        AACADTSStreamSource source = new AACADTSStreamSource(20, null);
+        try {
+            source.readAt(0, new byte[1], 0, 1);
+            fail();
+        } catch (IOException expected) {}
+    }
+
+    @Test
+    public void bundlesReportedOnceFullyRead() throws Exception {
+        final List<AudioBundle> consumed = new ArrayList<AudioBundle>();
+        AACADTSStreamSource source = new AACADTSStreamSource(1000, new AACADTSStreamSource.ConsumptionListener() {
+            @Override
+            public void onBundleConsumed(AudioBundle bundle) {
+                consumed.add(bundle);
+            }
+        });
+        AudioBundle first = bundle(10, 1);
+        AudioBundle second = bundle(10, 2);
+        source.append(first);
+        source.append(second);
+
+        byte[] buf = new byte[20];
+        source.readAt(0, buf, 0, 5);
+        assertTrue(consumed.isEmpty());
+        source.readAt(5, buf, 0, 10);
+        assertEquals(1, consumed.size());
+        assertSame(first, consumed.get(0));
+        source.readAt(0, buf, 0, 4); // reading back does not report anything again
+        assertEquals(1, consumed.size());
+        assertSame(second, source.takeUnconsumed().get(0));
+    }
+
+    @Test
+    public void readBackAfterConsumptionDoesNotTouchTheBundle() throws Exception {
+        AACADTSStreamSource source = new AACADTSStreamSource(1000, null);
+        byte[] frame = new byte[10];
+        Arrays.fill(frame, (byte) 1);
+        AudioBundle first = new AudioBundle(1);
+        first.addSegment(frame);
+        source.append(first);
+        source.append(bundle(10, 2));
+
+        byte[] buf = new byte[20];
+        assertEquals(10, source.readAt(0, buf, 0, 10));
+        Arrays.fill(frame, (byte) 9); // the owner has the bundle back and reuses it
+        assertEquals(15, source.readAt(0, buf, 0, 15));
+        assertEquals(1, buf[0]);
+        assertEquals(1, buf[9]);
+        assertEquals(2, buf[14]);
+    }
+
+    @Test
+    public void dataBeyondTheRetainWindowIsReleased() throws Exception {
+        AACADTSStreamSource source = new AACADTSStreamSource(1000, null);
+        source.append(bundle(100 * 1024, 1));
+        source.append(bundle(10, 2));
+        byte[] buf = new byte[100 * 1024];
+        assertEquals(buf.length, source.readAt(0, buf, 0, buf.length));
+
+        assertEquals(1, source.readAt(buf.length - 1, buf, 0, 1)); // still inside the window
+        try {
+            source.readAt(0, buf, 0, 1);
+            fail();
+        } catch (IOException expected) {}
+    }
+
+}
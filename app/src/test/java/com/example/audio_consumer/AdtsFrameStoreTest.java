@@ -0,0 +1,40 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AdtsFrameStoreTest {
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void servesFramesAndSkipsGarbage() throws Exception {
+        File file = File.createTempFile("frames", ".aac");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {0x12, (byte) 0xFF, 0x00}); // garbage before the first frame
+        for (byte[] frame : TestFrames.AAC) {
+            out.write(frame);
+        }
+        out.close();
+
+        AdtsFrameStore store = AdtsFrameStore.open(file);
+        assertArrayEquals(TestFrames.AAC[0], toArray(store.frame(0)));
+        assertArrayEquals(TestFrames.AAC[5], toArray(store.frame(5)));
+        assertEquals(TestFrames.AAC.length, store.getNumFrames());
+        assertArrayEquals(TestFrames.AAC[TestFrames.AAC.length - 1], toArray(store.frame(TestFrames.AAC.length - 1)));
+        assertNull(store.frame(TestFrames.AAC.length));
+        assertEquals(3, store.getBytesSkipped());
+        store.close();
+    }
+
+}
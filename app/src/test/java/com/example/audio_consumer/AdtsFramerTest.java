@@ -0,0 +1,127 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdtsFramerTest {
+
+    // AAC LC, 44.1 kHz, stereo frame of the given length whose payload bytes are all value
+    private static byte[] frame(int length, boolean crc, int value) {
+        byte[] frame = new byte[length];
+        Arrays.fill(frame, (byte) value);
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) (crc ? 0xF0 : 0xF1); // protection_absent is the lowest bit
+        frame[2] = (byte) ((1 << 6) | (4 << 2));
+        frame[3] = (byte) ((2 << 6) | (length >> 11));
+        frame[4] = (byte) (length >> 3);
+        frame[5] = (byte) (((length & 0x07) << 5) | 0x1F);
+        frame[6] = (byte) 0xFC;
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Collector implements AdtsFramer.FrameListener {
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        final List<Integer> headerLengths = new ArrayList<Integer>();
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length, AdtsHeader header) {
+            frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+            headerLengths.add(header.getHeaderLength());
+        }
+    }
+
+    @Test
+    public void resyncsAfterGarbage() {
+        Collector collector = new Collector();
+        AdtsFramer framer = new AdtsFramer(collector);
+        byte[] a = frame(100, false, 1);
+        byte[] b = frame(120, false, 2);
+        byte[] c = frame(50, false, 3);
+        framer.feed(concat(new byte[] { 0x00, 0x12, 0x34 }, a, b, c, new byte[] { 0x56, 0x78 }, a, b));
+
+        // the c before the second garbage run is dropped: no sync word follows it
+        assertEquals(4, collector.frames.size());
+        assertArrayEquals(a, collector.frames.get(0));
+        assertArrayEquals(b, collector.frames.get(1));
+        assertArrayEquals(a, collector.frames.get(2));
+        assertArrayEquals(b, collector.frames.get(3));
+        assertEquals(1, framer.getFramesRejected());
+    }
+
+    @Test
+    public void rejectsBadHeaderAndLength() {
+        Collector collector = new Collector();
+        AdtsFramer framer = new AdtsFramer(collector);
+        byte[] badRate = frame(60, false, 1);
+        badRate[2] = (byte) ((1 << 6) | (15 << 2)); // reserved sampling frequency index
+        byte[] tooShort = frame(60, false, 1);
+        tooShort[3] = (byte) (2 << 6); // frame length 3, shorter than the header
+        tooShort[4] = 0;
+        tooShort[5] = (byte) ((3 << 5) | 0x1F);
+        byte[] good = frame(80, false, 2);
+        framer.feed(concat(badRate, tooShort, good, frame(50, false, 3)));
+
+        assertEquals(2, framer.getFramesEmitted());
+        assertArrayEquals(good, collector.frames.get(0));
+        assertTrue(framer.getFramesRejected() >= 2);
+    }
+
+    @Test
+    public void rejectsFrameNotFollowedBySyncWord() {
+        Collector collector = new Collector();
+        AdtsFramer framer = new AdtsFramer(collector);
+        byte[] wrongLength = frame(100, false, 1);
+        wrongLength[4] = (byte) (90 >> 3); // claims 90 bytes, so the next sync word is not where it says
+        wrongLength[5] = (byte) (((90 & 0x07) << 5) | 0x1F);
+        byte[] good = frame(100, false, 2);
+        framer.feed(concat(wrongLength, good, frame(50, false, 3)));
+
+        assertArrayEquals(good, collector.frames.get(0));
+        assertTrue(framer.getFramesRejected() >= 1);
+    }
+
+    @Test
+    public void joinsFramesSplitAcrossChunks() {
+        Collector collector = new Collector();
+        AdtsFramer framer = new AdtsFramer(collector);
+        byte[] stream = concat(frame(300, false, 1), frame(5000, false, 2), frame(7, false, 3), frame(40, false, 4));
+        for (int i = 0; i < stream.length; i += 13) {
+            framer.feed(stream, i, Math.min(13, stream.length - i));
+        }
+
+        assertEquals(4, collector.frames.size());
+        assertEquals(5000, collector.frames.get(1).length);
+        assertEquals(7, collector.frames.get(2).length);
+        assertEquals(0, framer.getBytesSkipped());
+    }
+
+    @Test
+    public void framesCrcProtectedHeaders() {
+        Collector collector = new Collector();
+        AdtsFramer framer = new AdtsFramer(collector);
+        byte[] a = frame(64, true, 1);
+        byte[] b = frame(9, true, 2); // just the header and its CRC
+        framer.feed(concat(a, b, frame(30, false, 3)));
+
+        assertEquals(3, collector.frames.size());
+        assertArrayEquals(a, collector.frames.get(0));
+        assertArrayEquals(b, collector.frames.get(1));
+        assertEquals(AdtsHeader.HEADER_LENGTH_WITH_CRC, (int) collector.headerLengths.get(0));
+        assertEquals(AdtsHeader.HEADER_LENGTH_NO_CRC, (int) collector.headerLengths.get(2));
+    }
+
+}
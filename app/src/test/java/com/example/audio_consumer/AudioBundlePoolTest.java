@@ -0,0 +1,59 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AudioBundlePoolTest {
+
+    @Test
+    public void recycledBundlesAreReused() {
+        AudioBundlePool pool = new AudioBundlePool();
+        AudioBundle bundle = pool.acquire(10);
+        assertEquals(16, bundle.getCapacity());
+        assertEquals(1, pool.getMisses());
+
+        bundle.recycle();
+        assertSame(bundle, pool.acquire(9)); // same size class
+        assertEquals(1, pool.getHits());
+        assertNotSame(bundle, pool.acquire(9));
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void recycledBundlesAreCleared() {
+        AudioBundlePool pool = new AudioBundlePool();
+        AudioBundle bundle = pool.acquire(4);
+        bundle.addSegment(new byte[] { 1, 2 });
+        bundle.appendCopy(new byte[] { 3, 4, 5 }, 0, 3);
+        bundle.addDurationUs(1000);
+        bundle.setStreamPositionUs(5000);
+        bundle.setEnqueueTimeNanos(42);
+        bundle.recycle();
+
+        AudioBundle reused = pool.acquire(4);
+        assertSame(bundle, reused);
+        assertEquals(0, reused.getNumSegments());
+        assertEquals(0, reused.getLength());
+        assertEquals(0, reused.getDurationUs());
+        assertEquals(0, reused.getStreamPositionUs());
+        assertEquals(0, reused.getEnqueueTimeNanos());
+        reused.appendCopy(new byte[] { 6 }, 0, 1);
+        assertArrayEquals(new byte[] { 6 }, reused.toByteArray());
+    }
+
+    @Test
+    public void fullSizeClassDiscards() {
+        AudioBundlePool pool = new AudioBundlePool(1);
+        AudioBundle first = pool.acquire(1);
+        AudioBundle second = pool.acquire(1);
+        first.recycle();
+        second.recycle();
+        assertEquals(1, pool.getDiscards());
+
+        // bundles too large for any class are never pooled
+        pool.acquire(1 << AudioBundlePool.NUM_SIZE_CLASSES).recycle();
+        assertEquals(2, pool.getDiscards());
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AudioBundleTest {
+
+    // segments {0,1,2}, {}, {3,4}, {5}; the middle of a larger array, an empty one, two whole arrays
+    private static AudioBundle bundle() {
+        AudioBundle bundle = new AudioBundle(2); // grows past its initial capacity
+        bundle.addSegment(new byte[] { 9, 0, 1, 2, 9 }, 1, 3);
+        bundle.addSegment(new byte[0]);
+        bundle.addSegment(new byte[] { 3, 4 });
+        bundle.addSegment(new byte[] { 5 });
+        return bundle;
+    }
+
+    @Test
+    public void readsAcrossSegmentBoundaries() {
+        AudioBundle bundle = bundle();
+        assertEquals(6, bundle.getLength());
+        assertEquals(4, bundle.getNumSegments());
+
+        byte[] dest = new byte[8];
+        assertEquals(4, bundle.readAt(1, dest, 2, 4));
+        assertArrayEquals(new byte[] { 0, 0, 1, 2, 3, 4, 0, 0 }, dest);
+        assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5 }, bundle.toByteArray());
+    }
+
+    @Test
+    public void readsStartingAtEachSegment() {
+        AudioBundle bundle = bundle();
+        byte[] dest = new byte[1];
+        for (int pos = 0; pos < 6; pos++) {
+            assertEquals(1, bundle.readAt(pos, dest, 0, 1));
+            assertEquals(pos, dest[0]); // position 3 starts right after the empty segment
+        }
+    }
+
+    @Test
+    public void readsAreClampedAtTheEnd() {
+        AudioBundle bundle = bundle();
+        byte[] dest = new byte[10];
+        assertEquals(2, bundle.readAt(4, dest, 0, 10));
+        assertEquals(-1, bundle.readAt(6, dest, 0, 1));
+        assertEquals(-1, bundle.readAt(100, dest, 0, 1));
+        assertEquals(-1, bundle.readAt(-1, dest, 0, 1));
+        assertEquals(-1, new AudioBundle(1).readAt(0, dest, 0, 1));
+    }
+
+    @Test
+    public void appendCopyOwnsItsBytes() {
+        AudioBundle bundle = new AudioBundle(1);
+        byte[] frame = new byte[] { 1, 2, 3 };
+        bundle.appendCopy(frame, 0, 3);
+        bundle.appendCopy(ByteBuffer.wrap(new byte[] { 4, 5 }));
+        frame[0] = 7;
+
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, bundle.toByteArray());
+        assertEquals(2, bundle.getSegmentLength(1));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BundleRingBufferTest {
+
+    private static AudioBundle bundle(long durationMs) {
+        AudioBundle bundle = new AudioBundle(1);
+        bundle.addDurationUs(durationMs * 1000);
+        return bundle;
+    }
+
+    private static class RecordingDropListener implements BundleRingBuffer.DropListener {
+        final List<AudioBundle> dropped = new ArrayList<AudioBundle>();
+
+        @Override
+        public void onDropped(AudioBundle bundle) {
+            dropped.add(bundle);
+        }
+    }
+
+    @Test
+    public void dropOldestKeepsNewestBundles() throws Exception {
+        RecordingDropListener drops = new RecordingDropListener();
+        BundleRingBuffer ring = new BundleRingBuffer(4, BundleRingBuffer.OverflowPolicy.DROP_OLDEST, 0, drops);
+        AudioBundle[] bundles = new AudioBundle[6];
+        for (int i = 0; i < bundles.length; i++) {
+            bundles[i] = bundle(100);
+            assertTrue(ring.offer(bundles[i]));
+        }
+
+        assertEquals(2, ring.getDropCount());
+        assertSame(bundles[0], drops.dropped.get(0));
+        assertSame(bundles[1], drops.dropped.get(1));
+        for (int i = 2; i < bundles.length; i++) {
+            assertSame(bundles[i], ring.poll());
+        }
+        assertNull(ring.poll());
+        assertEquals(0, ring.getQueuedDurationUs());
+    }
+
+    @Test
+    public void dropNewestRejectsIncomingBundle() throws Exception {
+        RecordingDropListener drops = new RecordingDropListener();
+        BundleRingBuffer ring = new BundleRingBuffer(2, BundleRingBuffer.OverflowPolicy.DROP_NEWEST, 0, drops);
+        AudioBundle first = bundle(100);
+        assertTrue(ring.offer(first));
+        assertTrue(ring.offer(bundle(100)));
+        AudioBundle rejected = bundle(100);
+
+        assertFalse(ring.offer(rejected));
+        assertSame(rejected, drops.dropped.get(0));
+        assertSame(first, ring.poll());
+        assertEquals(2, ring.getHighWaterMark());
+    }
+
+    @Test
+    public void skipToLiveBoundsQueuedDuration() throws Exception {
+        BundleRingBuffer ring = new BundleRingBuffer(16, BundleRingBuffer.OverflowPolicy.SKIP_TO_LIVE, 1000, null);
+        for (int i = 0; i < 10; i++) {
+            ring.offer(bundle(300));
+        }
+
+        assertEquals(3, ring.size());
+        assertEquals(900000, ring.getQueuedDurationUs());
+        assertEquals(7, ring.getDropCount());
+    }
+
+    @Test
+    public void blockingProducerLosesNothing() throws Exception {
+        final BundleRingBuffer ring = new BundleRingBuffer(4, BundleRingBuffer.OverflowPolicy.BLOCK, 0, null);
+        final int count = 10000;
+        final AudioBundle[] bundles = new AudioBundle[count];
+        for (int i = 0; i < count; i++) {
+            bundles[i] = bundle(1);
+        }
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (AudioBundle bundle : bundles) {
+                        ring.offer(bundle);
+                    }
+                } catch (InterruptedException e) {
+                    fail("interrupted");
+                }
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            assertSame(bundles[i], ring.take());
+        }
+        producer.join();
+        assertEquals(0, ring.getDropCount());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void wakeConsumerReleasesAWaitingTake() throws Exception {
+        final BundleRingBuffer ring = new BundleRingBuffer(4, BundleRingBuffer.OverflowPolicy.BLOCK, 0, null);
+        final AudioBundle[] taken = { bundle(1) };
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taken[0] = ring.take();
+                } catch (InterruptedException e) {
+                    fail("interrupted");
+                }
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+
+        ring.wakeConsumer();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertNull(taken[0]);
+    }
+
+}
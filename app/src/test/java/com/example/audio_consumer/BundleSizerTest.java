@@ -0,0 +1,56 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BundleSizerTest {
+
+    @Test
+    public void growsWhenPrepareIsExpensive() {
+        BundleSizer sizer = new BundleSizer(3000, 200, 1000);
+        sizer.onBundleStarted(200, 0); // 20% of the bundle
+        assertEquals(1250, sizer.getBundleDurationMs());
+        assertEquals(1, sizer.getNumChanges());
+    }
+
+    @Test
+    public void growsOnlyWhenStarved() {
+        BundleSizer sizer = new BundleSizer(3000, 200, 1000);
+        // a live stream keeps an empty queue; waiting a few ms for the next bundle is not an underrun
+        for (int i = 0; i < 3; i++) {
+            sizer.onBundleStarted(10, BundleSizer.STARVATION_THRESHOLD_MS);
+        }
+        assertEquals(1000, sizer.getBundleDurationMs());
+
+        sizer.onBundleStarted(10, 300);
+        assertEquals(1250, sizer.getBundleDurationMs());
+        assertTrue(sizer.getLastChangeReason().contains("starved"));
+    }
+
+    @Test
+    public void shrinksAfterHealthyBundles() {
+        BundleSizer sizer = new BundleSizer(3000, 200, 1000);
+        for (int i = 0; i < 3; i++) {
+            sizer.onBundleStarted(10, 0);
+        }
+        assertEquals(1000, sizer.getBundleDurationMs());
+        sizer.onBundleStarted(10, 0);
+        assertEquals(800, sizer.getBundleDurationMs());
+    }
+
+    @Test
+    public void staysWithinLimits() {
+        BundleSizer sizer = new BundleSizer(1500, 500, 5000);
+        assertEquals(1500, sizer.getBundleDurationMs()); // initial size clamped to the target
+        sizer.onBundleStarted(1000, 1000);
+        assertEquals(1500, sizer.getBundleDurationMs());
+        assertEquals(0, sizer.getNumChanges());
+
+        for (int i = 0; i < 40; i++) {
+            sizer.onBundleStarted(0, 0);
+        }
+        assertEquals(500, sizer.getBundleDurationMs());
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.example.audio_consumer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pure-JVM AudioSink that "plays" a bundle by waiting out its duration, optionally sped up,
+ * and records everything it was given.
+ */
+public class FakeAudioSink implements AudioSink {
+
+    private final double speedup_;
+    private final long setupDelayMs_;
+    private final ScheduledExecutorService clock_ = Executors.newSingleThreadScheduledExecutor();
+    private final ByteArrayOutputStream played_ = new ByteArrayOutputStream();
+
+    private Listener listener_;
+    private int bundlesStarted_ = 0;
+    private int failBundle_ = -1;
+    private AudioBundle unfinished_; // played but not called back yet
+
+    /**
+     * @param speedup       how many times faster than real time bundles finish
+     * @param setupDelayMs  time play() blocks before a bundle starts, standing in for prepare()
+     */
+    public FakeAudioSink(double speedup, long setupDelayMs) {
+        speedup_ = speedup;
+        setupDelayMs_ = setupDelayMs;
+    }
+
+    /** Makes the index-th bundle given to play() fail instead of finishing. */
+    public synchronized void failBundle(int index) {
+        failBundle_ = index;
+    }
+
+    @Override
+    public void open(Listener listener) {
+        listener_ = listener;
+    }
+
+    @Override
+    public void play(final AudioBundle bundle) {
+        if (setupDelayMs_ > 0) {
+            try {
+                Thread.sleep(setupDelayMs_);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final boolean fail;
+        synchronized (this) {
+            fail = bundlesStarted_++ == failBundle_;
+            if (!fail) {
+                byte[] bytes = bundle.toByteArray();
+                played_.write(bytes, 0, bytes.length);
+            }
+            unfinished_ = bundle;
+        }
+        clock_.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!finish(bundle)) return;
+                if (fail) {
+                    listener_.onBundleFailed(bundle, "failure injected by test");
+                } else {
+                    listener_.onBundleFinished(bundle);
+                }
+            }
+        }, (long) (bundle.getDurationUs() / speedup_), TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void close() {
+        clock_.shutdownNow();
+        AudioBundle unfinished;
+        synchronized (this) {
+            unfinished = unfinished_;
+        }
+        if (unfinished != null && finish(unfinished)) {
+            listener_.onBundleFailed(unfinished, "sink closed");
+        }
+    }
+
+    // whether the caller is the one to call back for bundle
+    private synchronized boolean finish(AudioBundle bundle) {
+        if (unfinished_ != bundle) return false;
+        unfinished_ = null;
+        return true;
+    }
+
+    public synchronized byte[] getPlayedBytes() {
+        return played_.toByteArray();
+    }
+
+}
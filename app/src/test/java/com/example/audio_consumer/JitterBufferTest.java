@@ -0,0 +1,158 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JitterBufferTest {
+
+    private static final long MS = 1000000;
+
+    private final List<byte[]> released_ = new ArrayList<byte[]>();
+
+    // every TestFrames frame lasts 128 ms, so a 1 ms bundle duration puts each frame in its own bundle
+    private StreamFrameBundler frameByFrameBundler() {
+        return new StreamFrameBundler(new StreamFrameBundler.BundleSink() {
+            @Override
+            public void onBundle(AudioBundle bundle) {
+                released_.add(bundle.toByteArray());
+            }
+        }, 0, new AudioBundlePool(), new BundleSizer(1, 1, 1));
+    }
+
+    private static void push(JitterBuffer buffer, int seq, long arrivalMs) {
+        byte[] frame = TestFrames.AAC[seq];
+        buffer.push(seq, frame, 0, frame.length, arrivalMs * MS);
+    }
+
+    @Test
+    public void reordersAndConcealsLoss() {
+        JitterBuffer buffer = new JitterBuffer(frameByFrameBundler());
+        push(buffer, 0, 0);
+        push(buffer, 2, 260);
+        push(buffer, 1, 270);
+        push(buffer, 1, 275);
+        push(buffer, 4, 520); // frame 3 is lost
+
+        buffer.releaseDue(2000 * MS);
+        push(buffer, 3, 2100);
+
+        assertEquals(5, released_.size());
+        assertArrayEquals(TestFrames.AAC[0], released_.get(0));
+        assertArrayEquals(TestFrames.AAC[1], released_.get(1));
+        assertArrayEquals(TestFrames.AAC[2], released_.get(2));
+        assertArrayEquals(TestFrames.AAC[2], released_.get(3)); // previous frame repeated
+        assertArrayEquals(TestFrames.AAC[4], released_.get(4));
+        assertEquals(1, buffer.getFramesDuplicate());
+        assertEquals(1, buffer.getFramesConcealed());
+        assertEquals(1, buffer.getFramesLate());
+    }
+
+    @Test
+    public void holdsFramesUntilPlayoutTime() {
+        JitterBuffer buffer = new JitterBuffer(frameByFrameBundler(), 64, 50, 1000);
+        push(buffer, 0, 0);
+        push(buffer, 1, 128);
+
+        buffer.releaseDue(40 * MS);
+        assertEquals(0, released_.size());
+        buffer.releaseDue(60 * MS);
+        assertEquals(1, released_.size());
+        buffer.drain();
+        assertEquals(2, released_.size());
+    }
+
+    @Test
+    public void playoutDelayFollowsJitter() {
+        JitterBuffer calm = new JitterBuffer(frameByFrameBundler());
+        JitterBuffer jittery = new JitterBuffer(frameByFrameBundler());
+        for (int seq = 0; seq < 40; seq++) {
+            push(calm, seq, seq * 128);
+            push(jittery, seq, seq * 128 + (seq % 2 == 0 ? 0 : 60));
+        }
+
+        assertEquals(JitterBuffer.DEFAULT_MIN_DELAY_MS, calm.getPlayoutDelayMs());
+        assertTrue(jittery.getPlayoutDelayMs() > 100);
+    }
+
+    @Test
+    public void keepsFramesReorderedAheadOfTheFirstArrival() {
+        JitterBuffer buffer = new JitterBuffer(frameByFrameBundler());
+        push(buffer, 1, 0);
+        push(buffer, 0, 5);
+        buffer.drain();
+
+        assertEquals(2, released_.size());
+        assertArrayEquals(TestFrames.AAC[0], released_.get(0));
+        assertArrayEquals(TestFrames.AAC[1], released_.get(1));
+        assertEquals(0, buffer.getFramesLate());
+    }
+
+    @Test
+    public void repeatOfAReleasedFrameIsADuplicate() {
+        JitterBuffer buffer = new JitterBuffer(frameByFrameBundler());
+        push(buffer, 0, 0);
+        push(buffer, 1, 128);
+        buffer.drain();
+        push(buffer, 1, 300);
+
+        assertEquals(1, buffer.getFramesDuplicate());
+        assertEquals(0, buffer.getFramesLate());
+    }
+
+    @Test
+    public void negativeSequenceNumberIsDropped() {
+        JitterBuffer buffer = new JitterBuffer(frameByFrameBundler());
+        push(buffer, 0, 0);
+        byte[] frame = TestFrames.AAC[1];
+        buffer.push(-1, frame, 0, frame.length, 128 * MS);
+        buffer.drain();
+
+        assertEquals(1, released_.size());
+        assertEquals(1, buffer.getFramesInvalid());
+    }
+
+    @Test
+    public void pushDoesNotWaitForTheBundler() throws Exception {
+        final CountDownLatch inBundler = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final JitterBuffer buffer = new JitterBuffer(new StreamFrameBundler(new StreamFrameBundler.BundleSink() {
+            @Override
+            public void onBundle(AudioBundle bundle) {
+                inBundler.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {}
+            }
+        }, 0, new AudioBundlePool(), new BundleSizer(1, 1, 1)));
+        push(buffer, 0, 0);
+        push(buffer, 1, 128);
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                buffer.drain();
+            }
+        });
+        releaser.start();
+        assertTrue(inBundler.await(5, TimeUnit.SECONDS));
+
+        Thread ingest = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                push(buffer, 2, 256);
+            }
+        });
+        ingest.start();
+        ingest.join(5000);
+        boolean ingestBlocked = ingest.isAlive();
+        unblock.countDown();
+        releaser.join(5000);
+        assertFalse(ingestBlocked);
+    }
+
+}
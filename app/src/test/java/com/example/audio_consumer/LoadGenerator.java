@@ -0,0 +1,163 @@
+package com.example.audio_consumer;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for the network producer: emits ADTS frames, numbered by sequence, at real-time
+ * cadence with seeded network impairments. Every decision is drawn from the seed in sequence
+ * order, so a given seed and settings always produce the same load profile.
+ */
+public class LoadGenerator implements Runnable {
+
+    /** Receives frames as they "arrive", e.g. JitterBuffer.push. */
+    public interface FrameReceiver {
+        void onFrame(long seq, byte[] frame, long arrivalNanos);
+    }
+
+    private static class Arrival implements Comparable<Arrival> {
+        final long seq;
+        final long arrivalNanos;
+
+        Arrival(long seq, long arrivalNanos) {
+            this.seq = seq;
+            this.arrivalNanos = arrivalNanos;
+        }
+
+        @Override
+        public int compareTo(Arrival other) {
+            if (arrivalNanos != other.arrivalNanos) return arrivalNanos < other.arrivalNanos ? -1 : 1;
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    private final byte[][] frames_;
+    private final long frameDurationNs_;
+    private final Random random_;
+    private final long maxJitterNs_;
+    private final double burstProbability_;
+    private final long burstNs_;
+    private final double lossProbability_;
+    private final double reorderProbability_;
+
+    private final PriorityQueue<Arrival> inFlight_ = new PriorityQueue<Arrival>();
+    private FrameReceiver receiver_;
+    private volatile boolean running_ = false;
+    private Thread t_;
+    private long startNanos_;
+    private long nextSeq_ = 0;
+    private long stalledUntilNanos_ = 0;
+
+    private volatile long framesSent_ = 0;
+    private volatile long framesLost_ = 0;
+    private volatile long framesReordered_ = 0;
+    private volatile long bursts_ = 0;
+
+    /**
+     * @param frames              frames to send, repeated in a loop
+     * @param maxJitterMs         each frame is delayed by a uniform 0..maxJitterMs
+     * @param burstProbability    chance per frame that delivery stalls for burstMs, after which
+     *                            everything held back arrives at once
+     * @param lossProbability     chance per frame that it never arrives
+     * @param reorderProbability  chance per frame that it arrives after the two frames behind it
+     */
+    public LoadGenerator(byte[][] frames, long seed, long maxJitterMs, double burstProbability, long burstMs,
+                         double lossProbability, double reorderProbability) {
+        frames_ = frames;
+        frameDurationNs_ = new AdtsHeader().wrap(frames[0], 0).getDurationNs();
+        random_ = new Random(seed);
+        maxJitterNs_ = TimeUnit.MILLISECONDS.toNanos(maxJitterMs);
+        burstProbability_ = burstProbability;
+        burstNs_ = TimeUnit.MILLISECONDS.toNanos(burstMs);
+        lossProbability_ = lossProbability;
+        reorderProbability_ = reorderProbability;
+    }
+
+    public synchronized void start(FrameReceiver receiver) {
+        if (t_ != null) return;
+        receiver_ = receiver;
+        startNanos_ = System.nanoTime();
+        running_ = true;
+        t_ = new Thread(this, "LoadGenerator");
+        t_.start();
+    }
+
+    public synchronized void stop() {
+        running_ = false;
+        if (t_ != null) {
+            t_.interrupt();
+            try {
+                t_.join();
+            } catch (InterruptedException e) {}
+            t_ = null;
+        }
+    }
+
+    /** When frame 0 was due; frame n is due n frame durations later. */
+    public long getStartNanos() { return startNanos_; }
+
+    public long getFrameDurationNs() { return frameDurationNs_; }
+
+    public long getFramesSent() { return framesSent_; }
+
+    public long getFramesLost() { return framesLost_; }
+
+    public long getFramesReordered() { return framesReordered_; }
+
+    public long getBursts() { return bursts_; }
+
+    @Override
+    public void run() {
+        while (running_) {
+            long now = System.nanoTime();
+            while (dueNanos(nextSeq_) <= now) {
+                schedule(nextSeq_++);
+            }
+            Arrival next = inFlight_.peek();
+            if (next != null && next.arrivalNanos <= now) {
+                inFlight_.poll();
+                byte[] frame = frames_[(int) (next.seq % frames_.length)];
+                receiver_.onFrame(next.seq, frame, now);
+                framesSent_++;
+                continue;
+            }
+            long wakeAt = dueNanos(nextSeq_);
+            if (next != null && next.arrivalNanos < wakeAt) wakeAt = next.arrivalNanos;
+            LockSupport.parkNanos(this, wakeAt - now);
+        }
+    }
+
+    private long dueNanos(long seq) {
+        return startNanos_ + seq * frameDurationNs_;
+    }
+
+    // draws this frame's impairments; frame 0 always arrives on time so the timeline starts at 0
+    private void schedule(long seq) {
+        long due = dueNanos(seq);
+        boolean lost = random_.nextDouble() < lossProbability_;
+        long jitter = maxJitterNs_ == 0 ? 0 : (long) (random_.nextDouble() * maxJitterNs_);
+        boolean burst = random_.nextDouble() < burstProbability_;
+        boolean reorder = random_.nextDouble() < reorderProbability_;
+        if (seq == 0) {
+            inFlight_.add(new Arrival(seq, due));
+            return;
+        }
+        if (burst) {
+            stalledUntilNanos_ = Math.max(stalledUntilNanos_, due + burstNs_);
+            bursts_++;
+        }
+        if (lost) {
+            framesLost_++;
+            return;
+        }
+        long arrival = Math.max(due + jitter, stalledUntilNanos_);
+        if (reorder) {
+            arrival += 2 * frameDurationNs_;
+            framesReordered_++;
+        }
+        inFlight_.add(new Arrival(seq, arrival));
+    }
+
+}
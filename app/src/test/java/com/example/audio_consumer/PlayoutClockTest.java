@@ -0,0 +1,144 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PlayoutClockTest {
+
+    @Test
+    public void trimFrontDropsLeadingFrames() {
+        AudioBundle bundle = new AudioBundle(4);
+        for (int i = 0; i < 4; i++) {
+            bundle.addSegment(new byte[] { (byte) i, (byte) i });
+        }
+        bundle.addDurationUs(400000);
+        bundle.setStreamPositionUs(1000000);
+
+        bundle.trimFront(3);
+        assertEquals(1, bundle.getNumSegments());
+        assertEquals(100000, bundle.getDurationUs());
+        assertEquals(1300000, bundle.getStreamPositionUs());
+        assertArrayEquals(new byte[] { 3, 3 }, bundle.toByteArray());
+    }
+
+    @Test
+    public void clockMeasuresLatenessAgainstAnchor() {
+        PlayoutClock clock = new PlayoutClock(100);
+        assertEquals(0, clock.correctionUs(0, 0, 0));
+        clock.onBundleStarted(0, 500000, 1000000000L);
+
+        // the next bundle, 500 ms in, is due at 1.5 s
+        assertEquals(0, clock.latenessUs(500000, 1400000000L));
+        assertEquals(0, clock.correctionUs(500000, 1200000000L, 1550000000L));
+        assertEquals(150000, clock.correctionUs(500000, 1200000000L, 1650000000L));
+    }
+
+    @Test
+    public void lateArrivalMovesAnchorInsteadOfSkipping() {
+        PlayoutClock clock = new PlayoutClock(100);
+        clock.onBundleStarted(0, 500000, 1000000000L);
+
+        // received 300 ms after it was due: nothing to skip, and the stream now runs 300 ms later
+        assertEquals(0, clock.correctionUs(500000, 1800000000L, 1810000000L));
+        assertEquals(0, clock.latenessUs(1000000, 2300000000L));
+    }
+
+    @Test
+    public void latencyReturnsToTargetOnceLateAudioCatchesUp() {
+        PlayoutClock clock = new PlayoutClock(100);
+        clock.onBundleStarted(0, 500000, 1000000000L);
+
+        // three 500 ms bundles in a row arrive 200 ms late each, and are played as they arrive
+        for (int i = 1; i <= 3; i++) {
+            long ptsUs = i * 500000L;
+            long receivedNanos = 1000000000L + ptsUs * 1000 + i * 200000000L;
+            clock.onBundleReceived(ptsUs, 500000, receivedNanos);
+            assertEquals(0, clock.correctionUs(ptsUs, receivedNanos, receivedNanos));
+            clock.onBundleStarted(ptsUs, 500000, receivedNanos);
+        }
+        assertEquals(0, clock.latenessUs(2000000, 3600000000L)); // 600 ms behind the start
+
+        // the network catches up and delivers the next four bundles at once, at 3.2 s
+        for (int i = 4; i <= 7; i++) {
+            clock.onBundleReceived(i * 500000L, 500000, 3200000000L);
+        }
+        // the latency given back is skipped, as far as it can be without the bundle being late
+        assertEquals(400000, clock.correctionUs(2000000, 3200000000L, 3600000000L));
+        clock.onBundleStarted(2400000, 100000, 3600000000L);
+        assertEquals(200000, clock.correctionUs(2500000, 3200000000L, 3700000000L));
+        clock.onBundleStarted(2700000, 300000, 3700000000L);
+
+        // back on the original anchor, and the next bundles play without correction
+        assertEquals(0, clock.latenessUs(3000000, 4000000000L));
+        assertEquals(50000, clock.latenessUs(3000000, 4050000000L));
+        assertEquals(0, clock.correctionUs(3000000, 3200000000L, 4000000000L));
+        assertEquals(0, clock.correctionUs(3500000, 3200000000L, 4500000000L));
+    }
+
+    @Test
+    public void clockWaitsForTheRenderedPosition() throws Exception {
+        NotRenderingSink sink = new NotRenderingSink(1, 150);
+        StreamPlayer player = new StreamPlayer(sink);
+        PlayoutClock clock = new PlayoutClock(100);
+        player.setPlayoutClock(clock);
+        player.start();
+        AudioBundle[] bundles = new StreamFrameBundler(Arrays.copyOf(TestFrames.AAC, 24), new AudioBundlePool(),
+                new BundleSizer(512, 512, 512)).getBundles();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (player.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        player.stop();
+
+        // the sink never knew what was audible, so the slow setup was not taken for drift
+        assertEquals(0, clock.getFramesSkipped());
+        assertEquals(-1, player.getOffsetFromLiveMs());
+    }
+
+    @Test
+    public void slowSinkSkipsFramesToHoldLatency() throws Exception {
+        // 512 ms bundles and 150 ms of setup per bundle: without correction latency grows every bundle
+        FakeAudioSink sink = new FakeAudioSink(1, 150);
+        StreamPlayer player = new StreamPlayer(sink);
+        PlayoutClock clock = new PlayoutClock(100);
+        player.setPlayoutClock(clock);
+        player.start();
+        AudioBundle[] bundles = new StreamFrameBundler(Arrays.copyOf(TestFrames.AAC, 24), new AudioBundlePool(),
+                new BundleSizer(512, 512, 512)).getBundles();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (player.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        player.stop();
+
+        assertTrue(clock.getFramesSkipped() > 0);
+        assertTrue(clock.getLastLatenessUs() < 100000 + 150000 + 128000);
+        assertTrue(player.getOffsetFromLiveMs() >= 0);
+    }
+
+    // a sink that has not started rendering, e.g. a MediaPlayer still preparing
+    private static class NotRenderingSink extends FakeAudioSink implements AudioSink.RenderedPosition {
+
+        NotRenderingSink(double speedup, long setupDelayMs) {
+            super(speedup, setupDelayMs);
+        }
+
+        @Override
+        public long getUnrenderedUs() {
+            return -1;
+        }
+
+    }
+
+}
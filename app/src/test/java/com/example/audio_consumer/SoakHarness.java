@@ -0,0 +1,191 @@
+package com.example.audio_consumer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a LoadGenerator through the whole receive path on the JVM: JitterBuffer,
+ * StreamFrameBundler and StreamPlayer, playing into a FakeAudioSink at real-time speed.
+ * Reports end-to-end latency, from when the first frame of a bundle was due at the producer
+ * to when the sink had prepared it and started playing it, along with underruns, drops, the
+ * offset from live held by the playout clock, pool misses after warm-up, and heap use, read
+ * after a GC at the start and end of the run.
+ */
+public class SoakHarness {
+
+    private static final long MEMORY_SAMPLE_MS = 100;
+    private static final long DRAIN_TIMEOUT_MS = 10000;
+
+    public static class Report {
+
+        public final LatencyHistogram.Snapshot endToEndLatency;
+        public final StreamPlayerMetrics.Snapshot player;
+        public final long framesSent;
+        public final long framesLost;
+        public final long framesConcealed;
+        public final long framesLate;
+        public final long startHeapBytes;
+        public final long peakHeapBytes;
+        public final long finalHeapBytes;
+        public final long poolMisses;
+        public final long poolMissesAfterWarmUp;
+        public final long framesSkipped;
+        public final long offsetFromLiveMs;
+
+        Report(LatencyHistogram.Snapshot endToEndLatency, StreamPlayerMetrics.Snapshot player,
+               LoadGenerator generator, JitterBuffer jitterBuffer, long startHeapBytes, long peakHeapBytes,
+               long finalHeapBytes, long poolMisses, long poolMissesAfterWarmUp, PlayoutClock clock,
+               long offsetFromLiveMs) {
+            this.endToEndLatency = endToEndLatency;
+            this.player = player;
+            framesSent = generator.getFramesSent();
+            framesLost = generator.getFramesLost();
+            framesConcealed = jitterBuffer.getFramesConcealed();
+            framesLate = jitterBuffer.getFramesLate();
+            this.startHeapBytes = startHeapBytes;
+            this.peakHeapBytes = peakHeapBytes;
+            this.finalHeapBytes = finalHeapBytes;
+            this.poolMisses = poolMisses;
+            this.poolMissesAfterWarmUp = poolMissesAfterWarmUp;
+            framesSkipped = clock.getFramesSkipped();
+            this.offsetFromLiveMs = offsetFromLiveMs;
+        }
+
+        @Override
+        public String toString() {
+            return "end-to-end: " + endToEndLatency + "\n" +
+                    "frames sent=" + framesSent + " lost=" + framesLost + " concealed=" + framesConcealed +
+                    " late=" + framesLate + " skipped=" + framesSkipped + "\n" +
+                    "offset from live at the end of the load: " + offsetFromLiveMs + "ms\n" +
+                    player + "\n" +
+                    "heap after GC start=" + startHeapBytes / 1024 + "KiB end=" + finalHeapBytes / 1024 +
+                    "KiB, peak=" + peakHeapBytes / 1024 + "KiB\n" +
+                    "pool misses=" + poolMisses + " after warm-up=" + poolMissesAfterWarmUp;
+        }
+
+    }
+
+    // plays each bundle on the fake sink and records its end-to-end latency once play() has
+    // returned, i.e. after the sink's setup, which is when StreamPlayer counts it as started
+    private static class LatencySink implements AudioSink {
+
+        private final AudioSink sink_;
+        private final LoadGenerator generator_;
+        private final LatencyHistogram latency_ = new LatencyHistogram();
+        private final AtomicLong started_ = new AtomicLong();
+
+        LatencySink(AudioSink sink, LoadGenerator generator) {
+            sink_ = sink;
+            generator_ = generator;
+        }
+
+        @Override
+        public void open(Listener listener) throws IOException {
+            sink_.open(listener);
+        }
+
+        @Override
+        public void play(AudioBundle bundle) throws IOException {
+            long dueNanos = generator_.getStartNanos() + bundle.getStreamPositionUs() * 1000;
+            started_.incrementAndGet();
+            sink_.play(bundle);
+            latency_.recordNanos(System.nanoTime() - dueNanos);
+        }
+
+        @Override
+        public void close() {
+            sink_.close();
+        }
+
+    }
+
+    private final LoadGenerator generator_;
+    private final BundleSizer sizer_;
+    private final long setupDelayMs_;
+
+    /**
+     * @param setupDelayMs  per-bundle setup time of the fake sink, standing in for prepare()
+     */
+    public SoakHarness(LoadGenerator generator, BundleSizer sizer, long setupDelayMs) {
+        generator_ = generator;
+        sizer_ = sizer;
+        setupDelayMs_ = setupDelayMs;
+    }
+
+    /**
+     * Runs the load for durationMs, then drains the pipeline and reports. Pool misses are
+     * also counted from warmUpMs on, by when bundle sizes and the pool should have settled.
+     */
+    public Report run(long durationMs, long warmUpMs) throws InterruptedException {
+        AudioBundlePool pool = new AudioBundlePool();
+        LatencySink sink = new LatencySink(new FakeAudioSink(1, setupDelayMs_), generator_);
+        final StreamPlayer player = new StreamPlayer(sink);
+        player.setBundleSizer(sizer_);
+        PlayoutClock clock = new PlayoutClock();
+        player.setPlayoutClock(clock);
+        player.start();
+        StreamFrameBundler bundler = new StreamFrameBundler(new StreamFrameBundler.BundleSink() {
+            @Override
+            public void onBundle(AudioBundle bundle) {
+                player.giveAudioBundle(bundle);
+            }
+        }, StreamFrameBundler.DEFAULT_MAX_BUNDLE_WAIT_MS, pool, sizer_);
+        final JitterBuffer jitterBuffer = new JitterBuffer(bundler);
+        long startHeapBytes = usedHeapAfterGc();
+        jitterBuffer.start();
+        generator_.start(new LoadGenerator.FrameReceiver() {
+            @Override
+            public void onFrame(long seq, byte[] frame, long arrivalNanos) {
+                jitterBuffer.push(seq, frame, 0, frame.length, arrivalNanos);
+            }
+        });
+
+        Runtime runtime = Runtime.getRuntime();
+        long peakHeapBytes = 0;
+        long warmUpMisses = -1;
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMs;
+        while (System.currentTimeMillis() < deadline) {
+            peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+            if (warmUpMisses < 0 && System.currentTimeMillis() >= start + warmUpMs) {
+                warmUpMisses = pool.getMisses();
+            }
+            Thread.sleep(MEMORY_SAMPLE_MS);
+        }
+        if (warmUpMisses < 0) warmUpMisses = pool.getMisses();
+        long steadyStateMisses = pool.getMisses() - warmUpMisses; // before draining flushes partial bundles
+
+        long offsetFromLiveMs = player.getOffsetFromLiveMs();
+        generator_.stop();
+        jitterBuffer.stop();
+        jitterBuffer.drain();
+        bundler.close();
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (!drained(player, sink) && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(MEMORY_SAMPLE_MS);
+        }
+        player.stop();
+
+        return new Report(sink.latency_.snapshot(), player.getMetrics().snapshot(), generator_, jitterBuffer,
+                startHeapBytes, peakHeapBytes, usedHeapAfterGc(), pool.getMisses(), steadyStateMisses, clock,
+                offsetFromLiveMs);
+    }
+
+    // heap in use once garbage has been collected, so start and end readings are comparable
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // every bundle queued has been started, and every bundle started has finished
+    private static boolean drained(StreamPlayer player, LatencySink sink) {
+        StreamPlayerMetrics.Snapshot metrics = player.getMetrics().snapshot();
+        return player.getQueueDepth() == 0 &&
+                metrics.bundlesPlayed + metrics.bundlesFailed >= sink.started_.get();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Real-time soak of the receive path, skipped unless a duration is given: a few seconds check
+ * a change, longer runs reproduce production load profiles offline, e.g.
+ * ./gradlew test -Dsoak.durationMs=3600000
+ */
+public class SoakTest {
+
+    private static final Long DURATION_MS = Long.getLong("soak.durationMs");
+    private static final long WARM_UP_MS = Long.getLong("soak.warmUpMs", 1000);
+    private static final long BURST_MS = 300;
+
+    @Test
+    public void survivesImpairedNetwork() throws Exception {
+        assumeTrue("soak.durationMs not set", DURATION_MS != null);
+        LoadGenerator generator = new LoadGenerator(TestFrames.AAC, 1, 40, 0.02, BURST_MS, 0.02, 0.02);
+        BundleSizer sizer = new BundleSizer(1000, 200, 256);
+        SoakHarness.Report report = new SoakHarness(generator, sizer, 5).run(DURATION_MS, WARM_UP_MS);
+        String summary = report.toString();
+
+        assertTrue(summary, report.player.bundlesPlayed > 0);
+        assertEquals(summary, 0, report.player.bundlesFailed);
+        assertTrue(summary, report.endToEndLatency.count >= report.player.bundlesPlayed);
+        // a bundle may sit out the largest jitter delay, a burst stall and its own filling up to
+        // the latency target; with the playout clock running, however long the soak, no more
+        long latencyBoundUs = (JitterBuffer.DEFAULT_MAX_DELAY_MS + BURST_MS + sizer.getTargetLatencyMs()) * 1000;
+        assertTrue(summary, report.endToEndLatency.percentileUs(99) < latencyBoundUs);
+    }
+
+    // bursts, bundle resizing and the drift a slow sink builds up until the playout clock
+    // skips all raise the number of bundles in flight at odd moments, so pool growth is
+    // checked on a steady network, with a fixed bundle size and a sink that keeps real time
+    @Test
+    public void poolStopsGrowingAfterWarmUp() throws Exception {
+        assumeTrue("soak.durationMs not set", DURATION_MS != null);
+        LoadGenerator generator = new LoadGenerator(TestFrames.AAC, 1, 20, 0, 0, 0, 0);
+        BundleSizer sizer = new BundleSizer(256, 256, 256);
+        SoakHarness.Report report = new SoakHarness(generator, sizer, 0).run(DURATION_MS, WARM_UP_MS);
+        String summary = report.toString();
+
+        assertTrue(summary, report.player.bundlesPlayed > 0);
+        assertTrue(summary, report.poolMisses > 0);
+        assertEquals(summary, 0, report.poolMissesAfterWarmUp); // every bundle is a recycled one
+        long latencyBoundUs = (JitterBuffer.DEFAULT_MAX_DELAY_MS + sizer.getTargetLatencyMs()) * 1000;
+        assertTrue(summary, report.endToEndLatency.percentileUs(99) < latencyBoundUs);
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamFrameBundlerTest {
+
+    // the test stream repeated often enough for the parallel path to split its work
+    private static byte[][] longStream(int repeats) {
+        byte[][] frames = new byte[TestFrames.AAC.length * repeats][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = TestFrames.AAC[i % TestFrames.AAC.length];
+        }
+        return frames;
+    }
+
+    private static void assertSameBundles(AudioBundle[] expected, AudioBundle[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getNumSegments(), actual[i].getNumSegments());
+            assertEquals(expected[i].getDurationUs(), actual[i].getDurationUs());
+            assertEquals(expected[i].getStreamPositionUs(), actual[i].getStreamPositionUs());
+            assertArrayEquals(expected[i].toByteArray(), actual[i].toByteArray());
+        }
+    }
+
+    @Test
+    public void parallelBundlesMatchSequential() {
+        byte[][] frames = longStream(400);
+        for (long durationMs : new long[] { 200, 1280, 5000 }) {
+            AudioBundle[] sequential = new StreamFrameBundler(frames, new AudioBundlePool(),
+                    new BundleSizer(durationMs, durationMs, durationMs)).getBundles();
+            AudioBundle[] parallel = new StreamFrameBundler(frames, new AudioBundlePool(),
+                    new BundleSizer(durationMs, durationMs, durationMs)).getBundlesParallel();
+            assertSameBundles(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void parallelCarriesDurationsOverUnparsableFrames() {
+        byte[][] frames = longStream(100);
+        byte[] garbage = new byte[] { 1, 2, 3 };
+        frames[0] = garbage;
+        for (int i = 5; i < frames.length; i += 7) {
+            frames[i] = garbage;
+        }
+        BundleSizer sizer = new BundleSizer(1280, 1280, 1280);
+        assertSameBundles(new StreamFrameBundler(frames, new AudioBundlePool(), sizer).getBundles(),
+                new StreamFrameBundler(frames, new AudioBundlePool(), sizer).getBundlesParallel());
+    }
+
+    @Test
+    public void parallelHandlesShortAndEmptyStreams() {
+        assertSameBundles(new StreamFrameBundler(TestFrames.AAC).getBundles(),
+                new StreamFrameBundler(TestFrames.AAC).getBundlesParallel());
+        assertEquals(0, new StreamFrameBundler(new byte[0][]).getBundlesParallel().length);
+    }
+
+    private static class CollectingSink implements StreamFrameBundler.BundleSink {
+        final List<AudioBundle> bundles = new ArrayList<AudioBundle>();
+
+        @Override
+        public synchronized void onBundle(AudioBundle bundle) {
+            bundles.add(bundle);
+        }
+
+        synchronized int size() {
+            return bundles.size();
+        }
+    }
+
+    // keeps flush tasks for the test to run by hand, as if they fired just as a bundle filled up
+    private static class ManualTimer extends ScheduledThreadPoolExecutor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        ManualTimer() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            return super.schedule(new Runnable() {
+                @Override
+                public void run() {}
+            }, 1, TimeUnit.HOURS);
+        }
+    }
+
+    // two 128 ms frames of the test stream fill a bundle
+    private static BundleSizer twoFrameSizer() {
+        return new BundleSizer(256, 256, 256);
+    }
+
+    @Test
+    public void partialBundleIsFlushedAfterMaxWait() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        StreamFrameBundler bundler = new StreamFrameBundler(sink, 50, new AudioBundlePool(), twoFrameSizer());
+        bundler.pushFrame(TestFrames.AAC[0]);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sink.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, sink.size());
+        assertEquals(1, sink.bundles.get(0).getNumSegments());
+        bundler.close();
+    }
+
+    @Test
+    public void staleFlushDoesNotCutNextBundle() {
+        CollectingSink sink = new CollectingSink();
+        ManualTimer timer = new ManualTimer();
+        StreamFrameBundler bundler = new StreamFrameBundler(sink, 50, new AudioBundlePool(), twoFrameSizer(), timer);
+        bundler.pushFrame(TestFrames.AAC[0]); // schedules the first flush
+        bundler.pushFrame(TestFrames.AAC[1]); // fills and emits the first bundle
+        bundler.pushFrame(TestFrames.AAC[2]); // schedules a flush for the second bundle
+        assertEquals(2, timer.tasks.size());
+
+        timer.tasks.get(0).run();
+        assertEquals(1, sink.size());
+        timer.tasks.get(1).run();
+        assertEquals(2, sink.size());
+        assertEquals(1, sink.bundles.get(1).getNumSegments());
+
+        bundler.close();
+        assertFalse(timer.isShutdown()); // a shared timer belongs to the caller
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void framesAfterCloseAreDropped() {
+        CollectingSink sink = new CollectingSink();
+        StreamFrameBundler bundler = new StreamFrameBundler(sink, 50, new AudioBundlePool(), twoFrameSizer());
+        bundler.pushFrame(TestFrames.AAC[0]);
+        bundler.close();
+        bundler.pushFrame(TestFrames.AAC[1]);
+        bundler.flush();
+
+        assertEquals(1, sink.size());
+        assertEquals(1, sink.bundles.get(0).getNumSegments());
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StreamManagerTest {
+
+    private static byte[] testStreamBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] frame : TestFrames.AAC) {
+            out.write(frame, 0, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean awaitPlayed(StreamManager.ManagedStream stream, int count, long timeoutMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            StreamPlayerMetrics.Snapshot metrics = stream.getMetrics().snapshot();
+            if (metrics.bundlesPlayed + metrics.bundlesFailed >= count) return true;
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    @Test
+    public void playsManyStreamsOnTwoThreads() throws Exception {
+        StreamManager manager = new StreamManager(2, StreamManager.DEFAULT_MEMORY_BUDGET_BYTES);
+        int numStreams = 12;
+        FakeAudioSink[] sinks = new FakeAudioSink[numStreams];
+        StreamManager.ManagedStream[] streams = new StreamManager.ManagedStream[numStreams];
+        int numBundles = 0;
+        for (int i = 0; i < numStreams; i++) {
+            sinks[i] = new FakeAudioSink(50, 0);
+            streams[i] = manager.openStream(sinks[i]);
+            AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+            numBundles = bundles.length;
+            for (AudioBundle bundle : bundles) {
+                streams[i].giveAudioBundle(bundle);
+            }
+        }
+
+        byte[] expected = testStreamBytes();
+        for (int i = 0; i < numStreams; i++) {
+            assertTrue(awaitPlayed(streams[i], numBundles, 5000));
+            assertArrayEquals(expected, sinks[i].getPlayedBytes());
+        }
+        assertEquals(0, manager.getBufferedBytes());
+        manager.shutdown();
+        assertEquals(0, manager.getNumStreams());
+    }
+
+    @Test
+    public void enforcesMemoryBudget() throws Exception {
+        long budget = 2000;
+        StreamManager manager = new StreamManager(1, budget);
+        StreamManager.ManagedStream stream = manager.openStream(new FakeAudioSink(1, 0));
+        for (AudioBundle bundle : new StreamFrameBundler(TestFrames.AAC).getBundles()) {
+            stream.giveAudioBundle(bundle);
+            assertTrue(manager.getBufferedBytes() <= budget);
+        }
+
+        assertTrue(stream.getMetrics().snapshot().bundlesDropped > 0);
+        manager.shutdown();
+    }
+
+    @Test
+    public void concurrentProducersStayWithinMemoryBudget() throws Exception {
+        long budget = 6000;
+        final StreamManager manager = new StreamManager(2, budget);
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong maxBuffered = new AtomicLong();
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; i++) {
+            final StreamManager.ManagedStream stream = manager.openStream(new FakeAudioSink(1, 0));
+            // built up front so the producers do nothing but contend for the budget
+            final AudioBundle[][] rounds = new AudioBundle[500][];
+            for (int round = 0; round < rounds.length; round++) {
+                rounds[round] = new StreamFrameBundler(TestFrames.AAC).getBundles();
+            }
+            producers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (AudioBundle[] bundles : rounds) {
+                        for (AudioBundle bundle : bundles) {
+                            stream.giveAudioBundle(bundle);
+                        }
+                    }
+                }
+            });
+            producers[i].start();
+        }
+        Thread monitor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    long buffered = manager.getBufferedBytes();
+                    if (buffered > maxBuffered.get()) maxBuffered.set(buffered);
+                }
+            }
+        });
+        monitor.start();
+
+        go.countDown();
+        for (Thread producer : producers) {
+            producer.join(10000);
+        }
+        done.set(true);
+        monitor.join(5000);
+        manager.shutdown();
+
+        assertTrue("buffered " + maxBuffered.get() + " of " + budget, maxBuffered.get() <= budget);
+        assertEquals(0, manager.getBufferedBytes());
+    }
+
+    @Test
+    public void bundleQueuedAfterCloseGivesBackTheBudget() throws Exception {
+        StreamManager manager = new StreamManager(1, StreamManager.DEFAULT_MEMORY_BUDGET_BYTES);
+        // the sink never finishes, so one bundle plays, two fill the queue and the producer blocks
+        final StreamManager.ManagedStream stream = manager.openStream(new FakeAudioSink(0.001, 0), 2,
+                BundleRingBuffer.OverflowPolicy.BLOCK, 0);
+        final AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC, new AudioBundlePool(),
+                new BundleSizer(1, 1, 1)).getBundles();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    stream.giveAudioBundle(bundles[i]);
+                }
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Thread.State.WAITING, producer.getState());
+
+        // close() empties the queue, which lets the blocked bundle in behind it
+        stream.close();
+        producer.join(5000);
+        assertEquals(0, manager.getBufferedBytes());
+        manager.shutdown();
+    }
+
+    @Test
+    public void closeRecyclesTheBundleTheSinkHolds() throws Exception {
+        StreamManager manager = new StreamManager(1, StreamManager.DEFAULT_MEMORY_BUDGET_BYTES);
+        FakeAudioSink sink = new FakeAudioSink(0.001, 0); // never finishes within the test
+        StreamManager.ManagedStream stream = manager.openStream(sink);
+        AudioBundle bundle = new StreamFrameBundler(TestFrames.AAC, new AudioBundlePool()).getBundles()[0];
+        stream.giveAudioBundle(bundle);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.getPlayedBytes().length == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(sink.getPlayedBytes().length > 0);
+
+        manager.shutdown();
+        assertEquals(0, bundle.getNumSegments()); // cleared by the pool
+    }
+
+}
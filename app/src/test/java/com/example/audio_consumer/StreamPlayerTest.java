@@ -0,0 +1,202 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class StreamPlayerTest {
+
+    private static byte[] concatenate(AudioBundle[] bundles) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (AudioBundle bundle : bundles) {
+            byte[] bytes = bundle.toByteArray();
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    // waits until the player thread has accounted for count bundles, played or failed
+    private static boolean awaitPlayed(StreamPlayer player, int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            StreamPlayerMetrics.Snapshot metrics = player.getMetrics().snapshot();
+            if (metrics.bundlesPlayed + metrics.bundlesFailed >= count) return true;
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    @Test
+    public void playsAllBundlesInOrder() throws Exception {
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+        byte[] expected = concatenate(bundles);
+        FakeAudioSink sink = new FakeAudioSink(100, 0);
+        StreamPlayer player = new StreamPlayer(sink);
+        player.start();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+
+        assertTrue(awaitPlayed(player, bundles.length, 5000));
+        player.stop();
+
+        assertArrayEquals(expected, sink.getPlayedBytes());
+        assertTrue(player.getLastInterBundleGapMs() >= 0);
+        StreamPlayerMetrics.Snapshot metrics = player.getMetrics().snapshot();
+        assertEquals(bundles.length, metrics.bundlesPlayed);
+        assertEquals(TestFrames.AAC.length, metrics.framesPlayed);
+        assertEquals(expected.length, metrics.bytesPlayed);
+        assertEquals(bundles.length, metrics.queueWait.count);
+    }
+
+    @Test
+    public void failedBundleDoesNotStallPlayback() throws Exception {
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+        FakeAudioSink sink = new FakeAudioSink(100, 0);
+        sink.failBundle(1);
+        StreamPlayer player = new StreamPlayer(sink);
+        player.start();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+
+        assertTrue(awaitPlayed(player, bundles.length, 5000));
+        player.stop();
+
+        StreamPlayerMetrics.Snapshot metrics = player.getMetrics().snapshot();
+        assertEquals(1, metrics.bundlesFailed);
+        assertEquals(bundles.length - 1, metrics.bundlesPlayed);
+    }
+
+    @Test
+    public void slowSetupGrowsBundles() throws Exception {
+        BundleSizer sizer = new BundleSizer();
+        long initialDurationMs = sizer.getBundleDurationMs();
+        FakeAudioSink sink = new FakeAudioSink(100, initialDurationMs / 5);
+        StreamPlayer player = new StreamPlayer(sink);
+        player.setBundleSizer(sizer);
+        player.start();
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+
+        assertTrue(awaitPlayed(player, bundles.length, 10000));
+        player.stop();
+
+        assertTrue(sizer.getBundleDurationMs() > initialDurationMs);
+        // every bundle was queued before it was due, so only prepare() time can have grown them
+        assertTrue(sizer.getLastChangeReason().startsWith("prepare()"));
+    }
+
+    @Test
+    public void sinkBufferingAheadIsNotStarved() throws Exception {
+        BundleSizer sizer = new BundleSizer();
+        StreamPlayer player = new StreamPlayer(new BufferingSink());
+        player.setBundleSizer(sizer);
+        player.start();
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+            Thread.sleep(50); // live: the sink has read each bundle long before the next one arrives
+        }
+
+        assertTrue(awaitPlayed(player, bundles.length, 5000));
+        player.stop();
+
+        assertEquals(0, player.getMetrics().snapshot().underruns);
+        assertEquals(0, player.getLastInterBundleGapMs());
+        assertTrue(sizer.getLastChangeReason(), sizer.getBundleDurationMs() <= BundleSizer.DEFAULT_INITIAL_BUNDLE_DURATION_MS);
+    }
+
+    @Test
+    public void restartAfterStopIsRejected() {
+        StreamPlayer player = new StreamPlayer(new FakeAudioSink(100, 0));
+        player.start();
+        player.stop();
+        try {
+            player.start();
+            fail("start() after stop() should throw");
+        } catch (IllegalStateException expected) {}
+    }
+
+    @Test
+    public void stopRecyclesTheBundleTheSinkHolds() throws Exception {
+        FakeAudioSink sink = new FakeAudioSink(0.001, 0); // never finishes within the test
+        StreamPlayer player = new StreamPlayer(sink);
+        player.start();
+        AudioBundle bundle = new StreamFrameBundler(TestFrames.AAC, new AudioBundlePool()).getBundles()[0];
+        player.giveAudioBundle(bundle);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.getPlayedBytes().length == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(sink.getPlayedBytes().length > 0);
+
+        player.stop();
+        assertEquals(0, bundle.getNumSegments()); // cleared by the pool
+    }
+
+    @Test
+    public void seekReplaysWhileWaitingForLiveAudio() throws Exception {
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC).getBundles();
+        StreamPlayer player = new StreamPlayer(new FakeAudioSink(100, 0));
+        player.setTimeShiftCache(new TimeShiftCache(new AudioBundlePool(), 1024 * 1024));
+        player.start();
+        for (AudioBundle bundle : bundles) {
+            player.giveAudioBundle(bundle);
+        }
+        assertTrue(awaitPlayed(player, bundles.length, 5000));
+        Thread.sleep(20); // the player is now blocked waiting for the next live bundle
+
+        player.seekTo(0);
+        assertTrue(awaitPlayed(player, bundles.length + 1, 5000));
+        player.stop();
+    }
+
+    @Test
+    public void replayDoesNotHoldUpLiveBundles() throws Exception {
+        AudioBundle[] bundles = new StreamFrameBundler(TestFrames.AAC, new AudioBundlePool(),
+                new BundleSizer(256, 256, 256)).getBundles();
+        StreamPlayer player = new StreamPlayer(new FakeAudioSink(1, 0), 2, BundleRingBuffer.OverflowPolicy.BLOCK, 0);
+        player.setTimeShiftCache(new TimeShiftCache(new AudioBundlePool(), 1024 * 1024));
+        player.start();
+        for (int i = 0; i < 3; i++) {
+            player.giveAudioBundle(bundles[i]);
+        }
+        assertTrue(awaitPlayed(player, 3, 5000));
+
+        player.seekTo(0);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!player.isReplaying() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(player.isReplaying());
+        // more than the queue holds, while the replay still has most of a second to go
+        for (int i = 3; i < bundles.length; i++) {
+            player.giveAudioBundle(bundles[i]);
+        }
+        assertTrue(player.isReplaying());
+        assertEquals(0, player.getQueueDepth());
+
+        player.resumeLive();
+        player.stop();
+    }
+
+    // reads bundles almost at once, like the streaming sink, while a second of audio waits to be heard
+    private static class BufferingSink extends FakeAudioSink implements AudioSink.RenderedPosition {
+
+        BufferingSink() {
+            super(1000, 0);
+        }
+
+        @Override
+        public long getUnrenderedUs() {
+            return 1000000;
+        }
+
+    }
+
+}
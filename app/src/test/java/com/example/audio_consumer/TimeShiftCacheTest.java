@@ -0,0 +1,82 @@
+package com.example.audio_consumer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TimeShiftCacheTest {
+
+    // a played bundle of two 100 byte frames filled with value, 200 ms long
+    private static AudioBundle bundle(int index, int value) {
+        AudioBundle bundle = new AudioBundle(2);
+        for (int i = 0; i < 2; i++) {
+            byte[] frame = new byte[100];
+            Arrays.fill(frame, (byte) value);
+            bundle.addSegment(frame);
+        }
+        bundle.addDurationUs(200000);
+        bundle.setStreamPositionUs(index * 200000L);
+        return bundle;
+    }
+
+    @Test
+    public void lookupFindsBundleCoveringPosition() throws Exception {
+        TimeShiftCache cache = new TimeShiftCache(new AudioBundlePool(), 10000);
+        for (int i = 0; i < 5; i++) {
+            cache.put(bundle(i, i));
+        }
+
+        AudioBundle copy = cache.copyAt(450000);
+        assertEquals(400000, copy.getStreamPositionUs());
+        assertEquals(200000, copy.getDurationUs());
+        assertEquals(2, copy.getNumSegments());
+        assertEquals(2, copy.toByteArray()[0]);
+        assertNull(cache.copyAt(1000000));
+        assertEquals(1000000, cache.getNewestEndUs());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() throws Exception {
+        TimeShiftCache cache = new TimeShiftCache(new AudioBundlePool(), 600);
+        cache.put(bundle(0, 0));
+        cache.put(bundle(1, 1));
+        cache.put(bundle(2, 2));
+        cache.copyAt(0).recycle(); // bundle 0 is now more recent than bundle 1
+        cache.put(bundle(3, 3));
+
+        assertNull(cache.copyAt(200000));
+        assertNotNull(cache.copyAt(0));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(600, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void spilledBundlesReadBackIntact() throws Exception {
+        File spill = File.createTempFile("timeshift", ".bin");
+        try {
+            TimeShiftCache cache = new TimeShiftCache(new AudioBundlePool(), 400, spill, 400);
+            for (int i = 0; i < 5; i++) {
+                cache.put(bundle(i, i));
+            }
+
+            // bundles 3 and 4 in memory, 1 and 2 spilled, 0 overwritten in the spill file
+            assertNull(cache.copyAt(0));
+            AudioBundle copy = cache.copyAt(200000);
+            assertEquals(2, copy.getNumSegments());
+            assertEquals(100, copy.getSegmentLength(1));
+            assertEquals(200000, copy.getDurationUs());
+            byte[] bytes = copy.toByteArray();
+            assertEquals(200, bytes.length);
+            assertEquals(1, bytes[199]);
+            assertEquals(2, cache.copyAt(400000).toByteArray()[0]);
+            assertEquals(3, cache.getSpills());
+            cache.close();
+        } finally {
+            spill.delete();
+        }
+    }
+
+}
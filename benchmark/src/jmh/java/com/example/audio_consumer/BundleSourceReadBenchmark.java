@@ -0,0 +1,50 @@
+package com.example.audio_consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * AACADTSAudioBundleSource.readAt() under the pattern MediaPlayer uses: a few small probe
+ * reads at the start and end of the source, then one sequential pass in fixed-size chunks.
+ */
+@State(Scope.Thread)
+public class BundleSourceReadBenchmark {
+
+    @Param({"10", "100"})
+    public int framesPerBundle;
+
+    @Param({"2048", "65536"})
+    public int readSize;
+
+    private AACADTSAudioBundleSource source_;
+    private byte[] dest_;
+
+    @Setup
+    public void setUp() {
+        AudioBundle bundle = new AudioBundle(framesPerBundle);
+        for (byte[] frame : SyntheticAdts.frames(framesPerBundle, 400, 7)) {
+            bundle.addSegment(frame);
+        }
+        source_ = new AACADTSAudioBundleSource(bundle);
+        dest_ = new byte[readSize];
+    }
+
+    @Benchmark
+    public long probeThenSequentialRead() throws IOException {
+        long size = source_.getSize();
+        long total = source_.readAt(0, dest_, 0, 16);
+        total += source_.readAt(Math.max(0, size - 16), dest_, 0, 16);
+        long position = 0;
+        int read;
+        while ((read = source_.readAt(position, dest_, 0, dest_.length)) > 0) {
+            position += read;
+        }
+        return total + position;
+    }
+
+}
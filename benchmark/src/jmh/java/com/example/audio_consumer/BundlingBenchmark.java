@@ -0,0 +1,50 @@
+package com.example.audio_consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** StreamFrameBundler.getBundles() and getBundlesParallel() across bundle sizes and stream lengths. */
+@State(Scope.Thread)
+public class BundlingBenchmark {
+
+    // 0 selects TestFrames.AAC, anything else a synthetic stream with that many frames
+    @Param({"0", "1000", "100000"})
+    public int numFrames;
+
+    @Param({"200", "1280", "5000"})
+    public long bundleDurationMs;
+
+    private byte[][] frames_;
+    private AudioBundlePool pool_;
+
+    @Setup
+    public void setUp() {
+        frames_ = numFrames == 0 ? TestFrames.AAC : SyntheticAdts.frames(numFrames, 400, 42);
+        pool_ = new AudioBundlePool();
+    }
+
+    @Benchmark
+    public void getBundles(Blackhole blackhole) {
+        BundleSizer sizer = new BundleSizer(bundleDurationMs, bundleDurationMs, bundleDurationMs);
+        AudioBundle[] bundles = new StreamFrameBundler(frames_, pool_, sizer).getBundles();
+        blackhole.consume(bundles);
+        for (AudioBundle bundle : bundles) {
+            bundle.recycle();
+        }
+    }
+
+    @Benchmark
+    public void getBundlesParallel(Blackhole blackhole) {
+        BundleSizer sizer = new BundleSizer(bundleDurationMs, bundleDurationMs, bundleDurationMs);
+        AudioBundle[] bundles = new StreamFrameBundler(frames_, pool_, sizer).getBundlesParallel();
+        blackhole.consume(bundles);
+        for (AudioBundle bundle : bundles) {
+            bundle.recycle();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.example.audio_consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Helpers.bytesToHex() and Helpers.hexStringToByteArray() on large inputs. */
+@State(Scope.Thread)
+public class HelpersBenchmark {
+
+    @Param({"4096", "1048576"})
+    public int numBytes;
+
+    private byte[] bytes_;
+    private String hex_;
+
+    @Setup
+    public void setUp() {
+        bytes_ = SyntheticAdts.stream(SyntheticAdts.frames(numBytes / 400 + 1, 400, 3));
+        bytes_ = java.util.Arrays.copyOf(bytes_, numBytes);
+        hex_ = Helpers.bytesToHex(bytes_);
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return Helpers.bytesToHex(bytes_);
+    }
+
+    @Benchmark
+    public byte[] hexStringToByteArray() {
+        return Helpers.hexStringToByteArray(hex_);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.example.audio_consumer;
+
+import java.util.Random;
+
+/** Builds ADTS streams with valid headers and random payloads for benchmark fixtures. */
+final class SyntheticAdts {
+
+    // AAC LC, 44.1 kHz, stereo
+    private static final int PROFILE = 1;
+    private static final int SAMPLING_FREQUENCY_INDEX = 4;
+    private static final int CHANNEL_CONFIGURATION = 2;
+
+    private SyntheticAdts() {}
+
+    static byte[][] frames(int numFrames, int meanFrameLength, long seed) {
+        Random random = new Random(seed);
+        byte[][] frames = new byte[numFrames][];
+        for (int i = 0; i < numFrames; i++) {
+            int length = meanFrameLength / 2 + random.nextInt(meanFrameLength);
+            length = Math.max(AdtsHeader.HEADER_LENGTH_NO_CRC, Math.min(AdtsHeader.MAX_FRAME_LENGTH, length));
+            byte[] frame = new byte[length];
+            random.nextBytes(frame);
+            writeHeader(frame, length);
+            frames[i] = frame;
+        }
+        return frames;
+    }
+
+    static byte[] stream(byte[][] frames) {
+        int total = 0;
+        for (byte[] frame : frames) total += frame.length;
+        byte[] stream = new byte[total];
+        int position = 0;
+        for (byte[] frame : frames) {
+            System.arraycopy(frame, 0, stream, position, frame.length);
+            position += frame.length;
+        }
+        return stream;
+    }
+
+    private static void writeHeader(byte[] frame, int length) {
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xF1; // MPEG-4, layer 0, no CRC
+        frame[2] = (byte) ((PROFILE << 6) | (SAMPLING_FREQUENCY_INDEX << 2) | (CHANNEL_CONFIGURATION >> 2));
+        frame[3] = (byte) (((CHANNEL_CONFIGURATION & 0x03) << 6) | (length >> 11));
+        frame[4] = (byte) (length >> 3);
+        frame[5] = (byte) (((length & 0x07) << 5) | 0x1F); // buffer fullness 0x7FF: VBR
+        frame[6] = (byte) 0xFC; // one raw data block
+    }
+
+}
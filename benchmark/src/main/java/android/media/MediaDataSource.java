@@ -0,0 +1,13 @@
+package android.media;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Stand-in for the framework class so app code can be benchmarked on the JVM. */
+public abstract class MediaDataSource implements Closeable {
+
+    public abstract int readAt(long position, byte[] buffer, int offset, int size) throws IOException;
+
+    public abstract long getSize() throws IOException;
+
+}
@@ -0,0 +1,20 @@
+package android.util;
+
+/** No-op stand-in for the framework class so app code can be benchmarked on the JVM. */
+public final class Log {
+
+    private Log() {}
+
+    public static int d(String tag, String msg) { return 0; }
+
+    public static int i(String tag, String msg) { return 0; }
+
+    public static int w(String tag, String msg) { return 0; }
+
+    public static int w(String tag, String msg, Throwable tr) { return 0; }
+
+    public static int e(String tag, String msg) { return 0; }
+
+    public static int e(String tag, String msg, Throwable tr) { return 0; }
+
+}